@@ -1,6 +1,6 @@
 package com.example.smsforwarder;
 
-import android.util.Base64;
+import android.telephony.SubscriptionManager;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -11,12 +11,11 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.security.KeyFactory;
-import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.concurrent.TimeUnit;
-
-import javax.crypto.Cipher;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -25,6 +24,7 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.Buffer;
 
 /**
  * Handles network calls to the remote SMS endpoint.
@@ -36,40 +36,138 @@ public class ApiClient {
         void onFailure(String plainJson, Exception exception);
     }
 
+    /**
+     * Receives one {@link DeliveryResult} per element of the posted data array, in the same order.
+     */
+    public interface BatchCallback {
+        void onResults(List<DeliveryResult> results);
+    }
+
+    /**
+     * Supplies a heartbeat to ride along on the next batch. A heartbeat stays pending until a
+     * request carrying it has been answered successfully, so a failed batch does not lose it.
+     */
+    public interface HeartbeatSource {
+        /** The heartbeat waiting to go out, or null when none is due. */
+        String peek();
+
+        /** Called after a request carrying {@code heartbeat} got a 2xx response. */
+        void onDelivered(String heartbeat);
+    }
+
     private static final String TAG = "ApiClient";
     private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
-    private static final String POST_URL = "https://emoney.win777.casino/pay/sms3money";
-    private static final String ENCRYPTED_POST_URL = "https://emoney.win777.casino/pay/sms";
+    static final String POST_URL = "https://emoney.win777.casino/pay/sms3money";
+    static final String ENCRYPTED_POST_URL = "https://emoney.win777.casino/pay/sms";
     private static final String SAMPLE_PUBLIC_KEY_BASE64 =
             "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEAtPRv+C4dCQwQYeGyKB5eeqcdcwnlNXBQ4zgnHTsPXzn3W2tfv8hg5zsedCZTWcU6RfboXHKD121mSBuq9FhTQ1Fcogq3UHQmbEu2+/yZSK+ovKv0Oemsh7UsdueMkY7rIIOXPhxQPYqlHnuw5NE/fNw+aZR9OBbEDtI2NBZyY9Pa8PBLIqdNLUJnIbC6HYoOmXfR+dAZVthdXQBUgcAiDyK/a9cT05zvQE4k78kBXaqZH8p4bepbFlem4ytvS7hXMynFQQXSBC76YLQGYCv0NN18wYixV8fquRCOmWcL130y1qnGp61flX0+9klkVaoCipCz2YMI4ZnPr5KhxFYQiwIDAQAB";
-    private static final String ALGORITHM = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
-    private static final String TOKEN = "79db628d60bf411b3c2dfb80c14b6232";
+    static final String TOKEN = "79db628d60bf411b3c2dfb80c14b6232";
+    static final Endpoint DEFAULT_ENDPOINT = new Endpoint("primary", POST_URL, TOKEN, WireFormat.DEFAULT, false);
+
+    private static final Base64.Encoder MIME_ENCODER = Base64.getMimeEncoder(76, new byte[] {'\n'});
+    private static volatile EncryptionEngine defaultEngine;
 
     private final OkHttpClient client;
+    private final Endpoint endpoint;
+    private final String postUrl;
+    private final EndpointHealth endpointHealth;
+    private final EncryptionEngine sealingEngine;
+    private final WireFormat wireFormat;
+    private volatile HeartbeatSource heartbeatSource;
 
     public ApiClient() {
-        client = new OkHttpClient.Builder()
-                .connectTimeout(15, TimeUnit.SECONDS)
-                .readTimeout(15, TimeUnit.SECONDS)
-                .writeTimeout(15, TimeUnit.SECONDS)
-                .build();
+        this(HttpClientProvider.get(), DEFAULT_ENDPOINT);
+    }
+
+    public ApiClient(OkHttpClient client, Endpoint endpoint) {
+        this(client, endpoint, null);
     }
 
     @VisibleForTesting
     ApiClient(OkHttpClient client) {
+        this(client, POST_URL);
+    }
+
+    @VisibleForTesting
+    ApiClient(OkHttpClient client, String postUrl) {
+        this(client, postUrl, null);
+    }
+
+    /**
+     * @param sealingEngine when non-null, {@code data} is replaced by an encrypted
+     *                      {@code envelope} (see {@link EncryptionEngine#seal(String)})
+     */
+    @VisibleForTesting
+    ApiClient(OkHttpClient client, String postUrl, EncryptionEngine sealingEngine) {
+        this(client, postUrl, sealingEngine, WireFormat.DEFAULT);
+    }
+
+    @VisibleForTesting
+    ApiClient(OkHttpClient client, String postUrl, EncryptionEngine sealingEngine, WireFormat wireFormat) {
+        this(client, new Endpoint(postUrl, postUrl, TOKEN, wireFormat, false), sealingEngine);
+    }
+
+    private ApiClient(OkHttpClient client, Endpoint endpoint, EncryptionEngine sealingEngine) {
         this.client = client;
+        this.endpoint = endpoint;
+        this.postUrl = endpoint.url;
+        this.endpointHealth = EndpointHealth.forEndpoint(endpoint.url);
+        this.sealingEngine = sealingEngine;
+        this.wireFormat = endpoint.wireFormat;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public EndpointHealth getEndpointHealth() {
+        return endpointHealth;
+    }
+
+    /**
+     * Opens a connection to the endpoint's host ahead of the first send.
+     */
+    public void prewarm() {
+        HttpClientProvider.prewarm(postUrl);
+    }
+
+    /**
+     * Keeps the pooled connection to the endpoint open while {@code hasBacklog} is true.
+     */
+    public void setKeepAlive(boolean hasBacklog) {
+        if (hasBacklog) {
+            HttpClientProvider.startKeepAlive(postUrl);
+        } else {
+            HttpClientProvider.stopKeepAlive();
+        }
     }
 
     public JSONObject buildBodyJson(SmsModel sms, String receiverNumber, String receiverIccid) throws JSONException {
+        return buildBodyJson(sms, receiverNumber, receiverIccid, null);
+    }
+
+    /**
+     * @param parsed fields extracted on the device, sent as {@code parsed} next to the raw
+     *               {@code content}; may be null
+     */
+    public JSONObject buildBodyJson(SmsModel sms, String receiverNumber, String receiverIccid,
+                                    ParsedTransaction parsed) throws JSONException {
         JSONObject jsonObject = new JSONObject();
+        jsonObject.put("message_id", sms.getMessageId());
         jsonObject.put("sender", sms.getSender());
         jsonObject.put("content", sms.getContent());
         jsonObject.put("receiver_number", receiverNumber);
-        long currentTime = System.currentTimeMillis();
-        jsonObject.put("sent_at", currentTime);
-        jsonObject.put("received_at", currentTime);
-        jsonObject.put("inserted_at", currentTime);
+        // Service-centre timestamp from the PDU, so retries do not shift the matching window.
+        // inserted_at is stamped by RetryManager when the row is first written.
+        jsonObject.put("sent_at", sms.getTimestamp());
+        jsonObject.put("received_at", sms.getTimestamp());
         jsonObject.put("receiver_iccid", receiverIccid == null ? "" : receiverIccid);
+        if (sms.getSubscriptionId() != SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+            jsonObject.put("subscription_id", sms.getSubscriptionId());
+        }
+        if (parsed != null) {
+            jsonObject.put("parsed", parsed.toJson());
+        }
         return jsonObject;
     }
 
@@ -85,115 +183,334 @@ public class ApiClient {
             return;
         }
         final String bodyString = bodyJson.toString();
-        try {
-            JSONArray data = new JSONArray();
-            data.put(new JSONObject(bodyString));
-            // String encrypted = encryptJson(payloadJson);
-
-            sendToServer(data, callback);
-            
-        } catch (Exception exception) {
-            Log.e(TAG, "Unexpected encryption error: " + exception.getMessage());
-            if (callback != null) {
-                callback.onFailure(bodyString, exception);
+        sendPayloadsAsync(Collections.singletonList(bodyString), results -> {
+            if (callback == null) {
+                return;
             }
-        }
+            DeliveryResult result = results.get(0);
+            if (result.status == DeliveryResult.Status.ACKED) {
+                callback.onSuccess();
+            } else {
+                callback.onFailure(bodyString, new IOException(result.reason));
+            }
+        });
     }
 
-    public void sendEncryptedListAsync(JSONArray bodyJsonArray, SendCallback callback) {
+    public void sendEncryptedListAsync(JSONArray bodyJsonArray, BatchCallback callback) {
         if (bodyJsonArray == null) {
-            Log.w(TAG, "Body JSON array is null; abort encrypted send.");
+            Log.w(TAG, "Body JSON array is null; nothing to send.");
+            bodyJsonArray = new JSONArray();
+        }
+        List<String> payloads = new ArrayList<>(bodyJsonArray.length());
+        for (int index = 0; index < bodyJsonArray.length(); index++) {
+            payloads.add(String.valueOf(bodyJsonArray.opt(index)));
+        }
+        sendPayloadsAsync(payloads, callback);
+    }
+
+    /**
+     * Posts already-serialized JSON objects as one batch. The payloads are written into the request
+     * as-is, so callers must pass well-formed objects (see {@link PayloadBatchBody#isObject}).
+     * An empty list completes at once with no results and no request.
+     */
+    public void sendPayloadsAsync(List<String> payloads, BatchCallback callback) {
+        if (payloads.isEmpty()) {
             if (callback != null) {
-                callback.onFailure(null, new IllegalArgumentException("Body JSON array is null"));
+                callback.onResults(Collections.<DeliveryResult>emptyList());
             }
             return;
         }
+        final int count = payloads.size();
+        HeartbeatSource source = heartbeatSource;
+        String heartbeat = source != null ? source.peek() : null;
+        RequestBody requestBody;
+        boolean gzipped;
         try {
-            // String encrypted = encryptJson(bodyString);
-
-            sendToServer(bodyJsonArray, callback);
+            requestBody = buildRequestBody(payloads, heartbeat);
+            gzipped = wireFormat.shouldGzip(requestBody.contentLength());
+            if (gzipped) {
+                requestBody = WireFormat.gzip(requestBody);
+            }
         } catch (Exception exception) {
-            Log.e(TAG, "Unexpected encryption error: " + exception.getMessage());
+            Log.e(TAG, "Could not build request body: " + exception.getMessage());
+            // The caller may hold the half-open probe; a failure releases it and counts towards
+            // opening the breaker, so a permanently broken endpoint stops being picked.
+            endpointHealth.recordFailure();
             if (callback != null) {
-                callback.onFailure(bodyJsonArray.toString(), exception);
+                callback.onResults(uniformResults(count, DeliveryResult.transientFailure(exception.getMessage())));
             }
+            return;
         }
+        sendToServer(requestBody, gzipped, count, heartbeat, callback);
     }
 
-    private void sendToServer(JSONArray data, SendCallback callback) {
+    public void setHeartbeatSource(HeartbeatSource heartbeatSource) {
+        this.heartbeatSource = heartbeatSource;
+    }
+
+    /**
+     * Posts {@code {"token": ..., "heartbeat": {...}}} on its own, for when no batch has gone out
+     * to carry it. On a sealed endpoint the heartbeat travels as
+     * {@code {"token": ..., "sealed_heartbeat": true, "envelope": {...}}} around
+     * {@code {"heartbeat": {...}}}. The outcome does not count towards the endpoint's circuit
+     * breaker.
+     */
+    public void sendHeartbeatAsync(String heartbeat) {
+        String json;
         try {
-            JSONObject requestJson = new JSONObject();
-            requestJson.put("token", TOKEN);
-            requestJson.put("data", data);
-
-            Log.w(TAG, "Sending data: " + requestJson.toString());
-            
-            RequestBody requestBody = RequestBody.create(requestJson.toString(), JSON_MEDIA_TYPE);
-            Request request = new Request.Builder()
-                .url(POST_URL)
-                .post(requestBody)
-                .addHeader("content-type", "application/json")
-                .addHeader("cache-control", "no-cache")
+            EncryptionEngine engine = sealingEngine();
+            json = engine == null
+                    ? "{\"token\":" + JSONObject.quote(endpoint.token) + ",\"heartbeat\":" + heartbeat + "}"
+                    : "{\"token\":" + JSONObject.quote(endpoint.token) + ",\"sealed_heartbeat\":true,\"envelope\":"
+                            + engine.seal("{\"heartbeat\":" + heartbeat + "}") + "}";
+        } catch (GeneralSecurityException | JSONException exception) {
+            Log.e(TAG, "Could not seal heartbeat: " + exception.getMessage());
+            return;
+        }
+        HeartbeatSource source = heartbeatSource;
+        Request request = new Request.Builder()
+                .url(postUrl)
+                .post(RequestBody.create(json, JSON_MEDIA_TYPE))
                 .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, "Heartbeat failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                if (response.isSuccessful()) {
+                    if (source != null) {
+                        source.onDelivered(heartbeat);
+                    }
+                } else {
+                    Log.d(TAG, "Heartbeat unsuccessful: code=" + response.code());
+                }
+                response.close();
+            }
+        });
+    }
+
+    private EncryptionEngine sealingEngine() throws GeneralSecurityException {
+        return sealingEngine != null ? sealingEngine : endpoint.sealed ? defaultEngine() : null;
+    }
+
+    /**
+     * On a sealed endpoint a heartbeat is sealed together with the data: the envelope then holds
+     * {@code {"data": ..., "heartbeat": {...}}} instead of the bare data value, and the request
+     * says so with {@code "sealed_heartbeat": true}.
+     */
+    private RequestBody buildRequestBody(List<String> payloads, String heartbeat) throws Exception {
+        boolean columnar = wireFormat.layout == WireFormat.Layout.COLUMNAR;
+        EncryptionEngine engine = sealingEngine();
+        if (engine == null && !columnar) {
+            return new PayloadBatchBody(endpoint.token, heartbeat, payloads);
+        }
+        // Sealing needs the whole plaintext, so render the data value once into memory.
+        Buffer data = new Buffer();
+        if (columnar) {
+            WireFormat.writeColumnar(data, payloads);
+        } else {
+            PayloadBatchBody.writeArray(data, payloads);
+        }
+        Buffer body = new Buffer();
+        body.writeUtf8("{\"token\":").writeUtf8(JSONObject.quote(endpoint.token));
+        if (columnar) {
+            body.writeUtf8(",\"format\":\"columnar\"");
+        }
+        if (engine != null) {
+            String plaintext = data.readUtf8();
+            if (heartbeat != null) {
+                // Heartbeats name the SIMs, so they never travel outside the envelope in the clear.
+                plaintext = "{\"data\":" + plaintext + ",\"heartbeat\":" + heartbeat + "}";
+                body.writeUtf8(",\"sealed_heartbeat\":true");
+            }
+            body.writeUtf8(",\"envelope\":").writeUtf8(engine.seal(plaintext).toString());
+        } else {
+            if (heartbeat != null) {
+                body.writeUtf8(",\"heartbeat\":").writeUtf8(heartbeat);
+            }
+            body.writeUtf8(",\"data\":").writeAll(data);
+        }
+        body.writeByte('}');
+        return RequestBody.create(body.readByteString(), JSON_MEDIA_TYPE);
+    }
+
+    private void sendToServer(RequestBody requestBody, boolean gzipped, int count, String heartbeat,
+                              BatchCallback callback) {
+        try {
+            long contentLength = requestBody.contentLength();
+            Log.d(TAG, "Sending batch of " + count + " (" + contentLength + " bytes"
+                    + (gzipped ? ", gzip)" : ")"));
+            if (contentLength > 0) {
+                Metrics.BYTES_SENT.add(contentLength);
+            }
 
+            Request.Builder builder = new Request.Builder()
+                .url(postUrl)
+                .post(requestBody)
+                .addHeader("content-type", "application/json")
+                .addHeader("cache-control", "no-cache");
+            if (gzipped) {
+                builder.addHeader("Content-Encoding", "gzip");
+            }
+            Request request = builder.build();
             client.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     Log.e(TAG, "POST failed: " + e.getMessage());
+                    endpointHealth.recordFailure();
                     if (callback != null) {
-                        try {
-                            callback.onFailure(data.getJSONObject(0).toString(), e);
-                        } catch (JSONException ex) {
-                            throw new RuntimeException(ex);
-                        }
+                        callback.onResults(uniformResults(count, DeliveryResult.transientFailure(e.getMessage())));
                     }
                 }
 
                 @Override
                 public void onResponse(Call call, Response response) {
-                    if (!response.isSuccessful()) {
-                        Log.w(TAG, "POST unsuccessful: code=" + response.code());
-                        if (callback != null) {
-                            try {
-                                callback.onFailure(data.getJSONObject(0).toString(), null);
-                            } catch (JSONException ex) {
-                                throw new RuntimeException(ex);
-                            }
+                    int code = response.code();
+                    long roundTrip = response.receivedResponseAtMillis() - response.sentRequestAtMillis();
+                    endpointHealth.recordLatency(roundTrip);
+                    Metrics.HTTP_ROUND_TRIP.record(roundTrip);
+                    String body = null;
+                    try {
+                        body = response.body() != null ? response.body().string() : null;
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not read response body: " + e.getMessage());
+                    } finally {
+                        response.close();
+                    }
+                    if (response.isSuccessful()) {
+                        Log.d(TAG, "POST successful.");
+                        Metrics.markAck(System.currentTimeMillis());
+                        endpointHealth.recordSuccess();
+                        HeartbeatSource source = heartbeatSource;
+                        if (heartbeat != null && source != null) {
+                            source.onDelivered(heartbeat);
                         }
                     } else {
-                        Log.d(TAG, "POST successful.");
-                        if (callback != null) {
-                            callback.onSuccess();
+                        Log.w(TAG, "POST unsuccessful: code=" + code);
+                        if (isTransientStatus(code)) {
+                            endpointHealth.recordFailure();
+                        } else {
+                            endpointHealth.recordSuccess();
                         }
                     }
-                    response.close();
+                    if (callback != null) {
+                        callback.onResults(parseResults(code, body, count));
+                    }
                 }
             });
         } catch (Exception exception) {
             Log.e(TAG, "Unexpected POST error: " + exception.getMessage());
+            endpointHealth.recordFailure();
             if (callback != null) {
-                callback.onFailure(data.toString(), exception);
+                callback.onResults(uniformResults(count, DeliveryResult.transientFailure(exception.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * Maps a response onto one result per posted element. A server that understands per-item
+     * delivery answers with {@code {"results": [...]}}, one entry per element of {@code data},
+     * each either a status string or {@code {"status": ..., "reason": ..., "index": ...}}.
+     * Without that array the HTTP status applies to the whole batch.
+     */
+    @VisibleForTesting
+    static List<DeliveryResult> parseResults(int code, String body, int count) {
+        JSONArray results = null;
+        if (body != null && !body.isEmpty()) {
+            try {
+                results = new JSONObject(body).optJSONArray("results");
+            } catch (JSONException ignored) {
+                // Plain-text or legacy response; fall back to the HTTP status.
+            }
+        }
+        if (results == null) {
+            if (code >= 200 && code < 300) {
+                return uniformResults(count, DeliveryResult.ACKED);
+            }
+            String reason = "HTTP " + code;
+            return uniformResults(count, isTransientStatus(code)
+                    ? DeliveryResult.transientFailure(reason)
+                    : DeliveryResult.rejected(reason));
+        }
+
+        List<DeliveryResult> parsed = uniformResults(count, DeliveryResult.transientFailure("Missing item result"));
+        for (int position = 0; position < results.length(); position++) {
+            JSONObject item = results.optJSONObject(position);
+            String status;
+            String reason = null;
+            int index = position;
+            if (item != null) {
+                status = item.optString("status", "");
+                reason = item.optString("reason", null);
+                index = item.optInt("index", position);
+            } else {
+                status = results.optString(position, "");
             }
+            if (index < 0 || index >= count) {
+                continue;
+            }
+            parsed.set(index, toDeliveryResult(status, reason));
+        }
+        return parsed;
+    }
+
+    private static DeliveryResult toDeliveryResult(String status, String reason) {
+        switch (status.toLowerCase(Locale.US)) {
+            case "ok":
+            case "acked":
+            case "accepted":
+            case "duplicate":
+                return DeliveryResult.ACKED;
+            case "rejected":
+            case "invalid":
+                return DeliveryResult.rejected(reason != null ? reason : status);
+            default:
+                return DeliveryResult.transientFailure(reason != null ? reason : status);
+        }
+    }
+
+    /**
+     * Timeouts, throttling, server errors and auth problems may clear up on their own; any other
+     * 4xx means the server looked at the payload and refused it.
+     */
+    private static boolean isTransientStatus(int code) {
+        return code == 401 || code == 403 || code == 408 || code == 429 || code >= 500;
+    }
+
+    private static List<DeliveryResult> uniformResults(int count, DeliveryResult result) {
+        List<DeliveryResult> results = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            results.add(result);
         }
+        return results;
     }
     
-    public String encryptJson(String data) throws Exception {
-        PublicKey publicKey = loadPublicKey(SAMPLE_PUBLIC_KEY_BASE64);
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        // Khởi tạo Cipher ở chế độ MÃ HÓA
-        cipher.init(Cipher.ENCRYPT_MODE, publicKey); 
-        
-        // Mã hóa dữ liệu (thường là UTF-8)
-        byte[] encryptedBytes = cipher.doFinal(data.getBytes("UTF-8"));
-        
-        // Trả về Base64 để dễ dàng truyền tải
-        return Base64.encodeToString(encryptedBytes, Base64.DEFAULT);
-    }
-
-    private PublicKey loadPublicKey(String base64Key) throws GeneralSecurityException {
-        byte[] decoded = Base64.decode(base64Key, Base64.DEFAULT);
-        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(decoded);
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-        return keyFactory.generatePublic(keySpec);
+    /**
+     * RSA-encrypts a short string for the server key. Batches go through
+     * {@link EncryptionEngine#seal(String)} instead.
+     *
+     * <p>The text matches what {@code android.util.Base64.DEFAULT} produced: 76-character lines,
+     * each ending in {@code "\n"}.
+     */
+    public String encryptJson(String data) throws GeneralSecurityException {
+        String encoded = MIME_ENCODER.encodeToString(defaultEngine().encryptBytes(data));
+        return encoded.isEmpty() ? encoded : encoded + "\n";
+    }
+
+    static EncryptionEngine defaultEngine() throws GeneralSecurityException {
+        EncryptionEngine engine = defaultEngine;
+        if (engine == null) {
+            synchronized (ApiClient.class) {
+                engine = defaultEngine;
+                if (engine == null) {
+                    engine = EncryptionEngine.fromBase64Key(SAMPLE_PUBLIC_KEY_BASE64);
+                    defaultEngine = engine;
+                }
+            }
+        }
+        return engine;
     }
 }
@@ -3,9 +3,15 @@ package com.example.smsforwarder;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.UUID;
+
 public final class AppPreferences {
     private static final String PREFS_NAME = "sms_prefs";
     private static final String KEY_FALLBACK_RECEIVER_NUMBER = "fallback_receiver_number";
+    private static final String KEY_ENDPOINT_CONFIG = "endpoint_config";
+    private static final String KEY_FILTER_RULES = "filter_rules";
+    private static final String KEY_FILTER_CONFIG_URL = "filter_config_url";
+    private static final String KEY_INSTALL_ID = "install_id";
 
     private AppPreferences() {
     }
@@ -21,4 +27,47 @@ public final class AppPreferences {
     public static String getFallbackReceiverNumber(Context context) {
         return getPrefs(context).getString(KEY_FALLBACK_RECEIVER_NUMBER, "");
     }
+
+    /**
+     * JSON endpoint list read by {@link EndpointRouter}; empty means the built-in endpoint.
+     */
+    public static void saveEndpointConfig(Context context, String json) {
+        getPrefs(context).edit().putString(KEY_ENDPOINT_CONFIG, json).apply();
+    }
+
+    public static String getEndpointConfig(Context context) {
+        return getPrefs(context).getString(KEY_ENDPOINT_CONFIG, "");
+    }
+
+    /**
+     * JSON rule set read by {@link SmsFilter}; empty forwards everything.
+     */
+    public static void saveFilterRules(Context context, String json) {
+        getPrefs(context).edit().putString(KEY_FILTER_RULES, json).apply();
+    }
+
+    public static String getFilterRules(Context context) {
+        return getPrefs(context).getString(KEY_FILTER_RULES, "");
+    }
+
+    public static void saveFilterConfigUrl(Context context, String url) {
+        getPrefs(context).edit().putString(KEY_FILTER_CONFIG_URL, url).apply();
+    }
+
+    public static String getFilterConfigUrl(Context context) {
+        return getPrefs(context).getString(KEY_FILTER_CONFIG_URL, "");
+    }
+
+    /**
+     * Random id that names this installation in heartbeats; created on first use.
+     */
+    public static synchronized String getInstallId(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        String installId = prefs.getString(KEY_INSTALL_ID, "");
+        if (installId.isEmpty()) {
+            installId = UUID.randomUUID().toString();
+            prefs.edit().putString(KEY_INSTALL_ID, installId).apply();
+        }
+        return installId;
+    }
 }
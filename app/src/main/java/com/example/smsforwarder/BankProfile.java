@@ -0,0 +1,96 @@
+package com.example.smsforwarder;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled template for one bank's transaction SMS. Each pattern captures the value in group
+ * 1; the amount pattern captures the sign in group 1 and the digits in group 2.
+ */
+public final class BankProfile {
+    public final String bank;
+    final KeywordMatcher senders;
+    private final Pattern amount;
+    private final Pattern account;
+    private final Pattern reference;
+    private final Pattern balance;
+    private final boolean generic;
+
+    public BankProfile(String bank, String[] senders, String amount, String account, String reference,
+                       String balance) {
+        this(bank, senders, amount, account, reference, balance, false);
+    }
+
+    private BankProfile(String bank, String[] senders, String amount, String account, String reference,
+                        String balance, boolean generic) {
+        this.bank = bank;
+        this.senders = KeywordMatcher.compile(Arrays.asList(senders));
+        this.amount = compile(amount);
+        this.account = compile(account);
+        this.reference = compile(reference);
+        this.balance = compile(balance);
+        this.generic = generic;
+    }
+
+    /**
+     * Fallback template for senders no profile claims. Its results are never high confidence.
+     */
+    static BankProfile generic(String amount, String account, String reference, String balance) {
+        return new BankProfile(null, new String[0], amount, account, reference, balance, true);
+    }
+
+    /**
+     * Returns null unless an amount was found; the other fields alone do not make a transaction.
+     */
+    ParsedTransaction parse(String body) {
+        Long signedAmount = null;
+        Matcher amountMatcher = amount.matcher(body);
+        if (amountMatcher.find()) {
+            Long value = digits(amountMatcher.group(2));
+            if (value != null) {
+                signedAmount = "-".equals(amountMatcher.group(1)) ? -value : value;
+            }
+        }
+        if (signedAmount == null) {
+            return null;
+        }
+        String accountValue = find(account, body);
+        String referenceValue = find(reference, body);
+        Long balanceValue = digits(find(balance, body));
+        boolean complete = accountValue != null
+                && (referenceValue != null || balanceValue != null);
+        return new ParsedTransaction(bank, signedAmount, accountValue, referenceValue, balanceValue,
+                complete && !generic ? ParsedTransaction.Confidence.HIGH : ParsedTransaction.Confidence.LOW);
+    }
+
+    private static Pattern compile(String regex) {
+        return Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private static String find(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        return matcher.find() ? matcher.group(1).trim() : null;
+    }
+
+    /**
+     * VND amounts have no minor unit, so both "1,500,000" and "1.500.000" are read as digits.
+     */
+    private static Long digits(String text) {
+        if (text == null) {
+            return null;
+        }
+        long value = 0;
+        int count = 0;
+        for (int index = 0; index < text.length(); index++) {
+            char c = text.charAt(index);
+            if (c >= '0' && c <= '9') {
+                if (++count > 15) {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+        }
+        return count == 0 ? null : value;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.smsforwarder;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okio.Utf8;
+
+/**
+ * Coalesces payloads submitted within a short window into a single POST. A batch is flushed when
+ * it reaches {@link Config#maxBatchSize} items or {@link Config#maxBytes}, or when the first item
+ * in it has waited {@link Config#maxLingerMillis}. Each submitter receives the
+ * {@link DeliveryResult} for its own payload.
+ */
+public class BatchingSender {
+    public interface ItemCallback {
+        void onResult(DeliveryResult result);
+    }
+
+    public static final class Config {
+        public static final Config DEFAULT = new Config(25, 300, 64 * 1024);
+
+        public final int maxBatchSize;
+        public final long maxLingerMillis;
+        public final int maxBytes;
+
+        public Config(int maxBatchSize, long maxLingerMillis, int maxBytes) {
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            this.maxLingerMillis = Math.max(0, maxLingerMillis);
+            this.maxBytes = Math.max(1, maxBytes);
+        }
+    }
+
+    private static final class PendingItem {
+        final String payload;
+        final ItemCallback callback;
+
+        PendingItem(String payload, ItemCallback callback) {
+            this.payload = payload;
+            this.callback = callback;
+        }
+    }
+
+    private static final String TAG = "BatchingSender";
+
+    private final PrioritySender sender;
+    private final Config config;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private List<PendingItem> buffer = new ArrayList<>();
+    private int bufferedBytes;
+    private ScheduledFuture<?> lingerTask;
+
+    public BatchingSender(PrioritySender sender, Config config) {
+        this.sender = sender;
+        this.config = config;
+    }
+
+    /**
+     * Adds a serialized JSON object to the current batch.
+     */
+    public void submit(String payload, ItemCallback callback) {
+        List<PendingItem> ready = null;
+        List<PendingItem> overflow = null;
+        // Encoded size, so non-ASCII messages count the same bytes the request body will carry.
+        int size = payload != null ? (int) Utf8.size(payload) : 0;
+        synchronized (this) {
+            if (!buffer.isEmpty() && bufferedBytes + size > config.maxBytes) {
+                overflow = takeBufferLocked();
+            }
+            buffer.add(new PendingItem(payload, callback));
+            bufferedBytes += size;
+            if (buffer.size() >= config.maxBatchSize || bufferedBytes >= config.maxBytes) {
+                ready = takeBufferLocked();
+            } else if (lingerTask == null) {
+                lingerTask = scheduler.schedule(this::flush, config.maxLingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (overflow != null) {
+            send(overflow);
+        }
+        if (ready != null) {
+            send(ready);
+        }
+    }
+
+    /**
+     * Sends whatever is buffered right away.
+     */
+    public void flush() {
+        List<PendingItem> ready;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                lingerTask = null;
+                return;
+            }
+            ready = takeBufferLocked();
+        }
+        send(ready);
+    }
+
+    private List<PendingItem> takeBufferLocked() {
+        List<PendingItem> taken = buffer;
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        return taken;
+    }
+
+    private void send(List<PendingItem> items) {
+        List<String> data = new ArrayList<>(items.size());
+        List<PendingItem> sent = new ArrayList<>(items.size());
+        for (PendingItem item : items) {
+            if (PayloadBatchBody.isObject(item.payload)) {
+                data.add(item.payload);
+                sent.add(item);
+            } else {
+                item.callback.onResult(DeliveryResult.rejected("Corrupt payload"));
+            }
+        }
+        if (sent.isEmpty()) {
+            return;
+        }
+        Log.d(TAG, "Flushing batch of " + sent.size());
+        sender.sendPayloadsAsync(PrioritySender.Lane.LIVE, data, results -> {
+            if (sent.size() > 1 && allRejected(results)) {
+                // A rejection of the whole batch may come from one bad row; send each row on its
+                // own so only that row is dead-lettered.
+                Log.w(TAG, "Batch of " + sent.size() + " rejected; retrying rows one by one");
+                for (PendingItem item : sent) {
+                    send(Collections.singletonList(item));
+                }
+                return;
+            }
+            for (int index = 0; index < sent.size(); index++) {
+                sent.get(index).callback.onResult(results.get(index));
+            }
+        });
+    }
+
+    private static boolean allRejected(List<DeliveryResult> results) {
+        for (DeliveryResult result : results) {
+            if (result.status != DeliveryResult.Status.REJECTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
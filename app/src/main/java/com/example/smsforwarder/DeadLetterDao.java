@@ -0,0 +1,15 @@
+package com.example.smsforwarder;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+
+import java.util.List;
+
+@Dao
+public interface DeadLetterDao {
+    @Insert
+    long insert(DeadLetterEntity entity);
+
+    @Insert
+    void insertAll(List<DeadLetterEntity> entities);
+}
@@ -0,0 +1,57 @@
+package com.example.smsforwarder;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Payload the server permanently rejected, kept with the reason for manual inspection.
+ */
+@Entity(tableName = "dead_letter_sms")
+public class DeadLetterEntity {
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    @ColumnInfo(name = "payload")
+    private final String payload;
+
+    @ColumnInfo(name = "reason")
+    private final String reason;
+
+    @ColumnInfo(name = "created_at")
+    private final long createdAt;
+
+    @ColumnInfo(name = "dead_at")
+    private final long deadAt;
+
+    public DeadLetterEntity(String payload, String reason, long createdAt, long deadAt) {
+        this.payload = payload;
+        this.reason = reason;
+        this.createdAt = createdAt;
+        this.deadAt = deadAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getDeadAt() {
+        return deadAt;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.smsforwarder;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface DedupDao {
+    /**
+     * Returns the new row id, or -1 if the message id was already recorded.
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insert(DedupEntity entity);
+
+    @Query("SELECT COUNT(*) FROM sms_dedup WHERE message_id = :messageId AND seen_at >= :since")
+    int countSince(String messageId, long since);
+
+    @Query("SELECT message_id FROM sms_dedup WHERE seen_at >= :since")
+    List<String> getIdsSince(long since);
+
+    @Query("DELETE FROM sms_dedup WHERE seen_at < :cutoff")
+    int deleteOlderThan(long cutoff);
+}
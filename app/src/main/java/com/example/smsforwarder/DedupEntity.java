@@ -0,0 +1,35 @@
+package com.example.smsforwarder;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Message id seen recently, used to drop redelivered and retried duplicates.
+ */
+@Entity(tableName = "sms_dedup", indices = {@Index(value = {"seen_at"})})
+public class DedupEntity {
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "message_id")
+    private final String messageId;
+
+    @ColumnInfo(name = "seen_at")
+    private final long seenAt;
+
+    public DedupEntity(@NonNull String messageId, long seenAt) {
+        this.messageId = messageId;
+        this.seenAt = seenAt;
+    }
+
+    @NonNull
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public long getSeenAt() {
+        return seenAt;
+    }
+}
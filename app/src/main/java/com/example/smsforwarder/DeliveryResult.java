@@ -0,0 +1,44 @@
+package com.example.smsforwarder;
+
+/**
+ * Outcome of a single payload within a batched POST.
+ */
+public final class DeliveryResult {
+    public enum Status {
+        /** The server stored the payload; the local row can be deleted. */
+        ACKED,
+        /** The server will never accept the payload; retrying is pointless. */
+        REJECTED,
+        /** The payload may succeed later (network error, timeout, server error). */
+        TRANSIENT
+    }
+
+    public static final DeliveryResult ACKED = new DeliveryResult(Status.ACKED, null);
+
+    public final Status status;
+    public final String reason;
+    /** Id of the {@link Endpoint} that produced this result, when known. */
+    public final String endpointId;
+
+    private DeliveryResult(Status status, String reason) {
+        this(status, reason, null);
+    }
+
+    private DeliveryResult(Status status, String reason, String endpointId) {
+        this.status = status;
+        this.reason = reason;
+        this.endpointId = endpointId;
+    }
+
+    public DeliveryResult withEndpoint(String endpointId) {
+        return new DeliveryResult(status, reason, endpointId);
+    }
+
+    public static DeliveryResult rejected(String reason) {
+        return new DeliveryResult(Status.REJECTED, reason);
+    }
+
+    public static DeliveryResult transientFailure(String reason) {
+        return new DeliveryResult(Status.TRANSIENT, reason);
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.smsforwarder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+
+/**
+ * Encrypts payloads for the server's public key. The key is parsed once and each thread keeps its
+ * own {@link Cipher} instances, so the per-call cost is the cipher work itself.
+ *
+ * <p>Plain RSA-OAEP only fits about 190 bytes, so batches use an envelope: a fresh AES-256-GCM key
+ * per batch encrypts the data, and only that key is encrypted with RSA.
+ */
+public final class EncryptionEngine {
+    public static final String ENVELOPE_ALGORITHM = "RSA-OAEP-256+A256GCM";
+
+    private static final String RSA_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final String AES_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int AES_KEY_BITS = 256;
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    // Spelled out because providers disagree on the MGF1 digest implied by the transformation name.
+    private static final OAEPParameterSpec OAEP_SHA256 = new OAEPParameterSpec(
+            "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+
+    private final PublicKey publicKey;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Cipher> rsaCipher = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> aesCipher = new ThreadLocal<>();
+    private final ThreadLocal<KeyGenerator> aesKeyGenerator = new ThreadLocal<>();
+
+    public EncryptionEngine(PublicKey publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * Parses an X.509 (SubjectPublicKeyInfo) RSA key encoded as Base64.
+     */
+    public static EncryptionEngine fromBase64Key(String base64Key) throws GeneralSecurityException {
+        byte[] decoded = Base64.getMimeDecoder().decode(base64Key);
+        PublicKey key = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(decoded));
+        return new EncryptionEngine(key);
+    }
+
+    /**
+     * RSA-OAEP encrypts a short string and returns it as Base64. Fails for anything larger than
+     * the key allows; use {@link #seal(String)} for batches.
+     */
+    public String encrypt(String data) throws GeneralSecurityException {
+        return Base64.getEncoder().encodeToString(encryptBytes(data));
+    }
+
+    /**
+     * Same as {@link #encrypt(String)} without the Base64 step.
+     */
+    byte[] encryptBytes(String data) throws GeneralSecurityException {
+        Cipher cipher = rsaCipher();
+        cipher.init(Cipher.ENCRYPT_MODE, publicKey, OAEP_SHA256, random);
+        return cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypts data of any size into {@code {"alg", "key", "iv", "data"}}, all values Base64.
+     */
+    public JSONObject seal(String data) throws GeneralSecurityException, JSONException {
+        SecretKey contentKey = aesKeyGenerator().generateKey();
+        byte[] iv = new byte[GCM_IV_BYTES];
+        random.nextBytes(iv);
+
+        Cipher aes = aesCipher();
+        aes.init(Cipher.ENCRYPT_MODE, contentKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        byte[] ciphertext = aes.doFinal(data.getBytes(StandardCharsets.UTF_8));
+
+        Cipher rsa = rsaCipher();
+        rsa.init(Cipher.ENCRYPT_MODE, publicKey, OAEP_SHA256, random);
+        byte[] wrappedKey = rsa.doFinal(contentKey.getEncoded());
+
+        Base64.Encoder encoder = Base64.getEncoder();
+        JSONObject envelope = new JSONObject();
+        envelope.put("alg", ENVELOPE_ALGORITHM);
+        envelope.put("key", encoder.encodeToString(wrappedKey));
+        envelope.put("iv", encoder.encodeToString(iv));
+        envelope.put("data", encoder.encodeToString(ciphertext));
+        return envelope;
+    }
+
+    private Cipher rsaCipher() throws GeneralSecurityException {
+        Cipher cipher = rsaCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(RSA_TRANSFORMATION);
+            rsaCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    private Cipher aesCipher() throws GeneralSecurityException {
+        Cipher cipher = aesCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(AES_TRANSFORMATION);
+            aesCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    private KeyGenerator aesKeyGenerator() throws GeneralSecurityException {
+        KeyGenerator generator = aesKeyGenerator.get();
+        if (generator == null) {
+            generator = KeyGenerator.getInstance("AES");
+            generator.init(AES_KEY_BITS, random);
+            aesKeyGenerator.set(generator);
+        }
+        return generator;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.smsforwarder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * One server that can take SMS batches: where to post, which token to send and how to encode the
+ * batch for it.
+ */
+public final class Endpoint {
+    public final String id;
+    public final String url;
+    public final String token;
+    public final WireFormat wireFormat;
+    /** Post the batch as an encrypted envelope (see {@link EncryptionEngine#seal(String)}). */
+    public final boolean sealed;
+
+    public Endpoint(String id, String url, String token, WireFormat wireFormat, boolean sealed) {
+        this.id = id;
+        this.url = url;
+        this.token = token;
+        this.wireFormat = wireFormat;
+        this.sealed = sealed;
+    }
+
+    /**
+     * Reads {@code {"id", "url", "token", "format": "rows"|"columnar", "gzip_threshold", "sealed"}}.
+     * Only {@code url} is required; the token defaults to {@code defaultToken}.
+     */
+    static Endpoint fromJson(JSONObject json, String fallbackId, String defaultToken) throws JSONException {
+        String url = json.getString("url");
+        WireFormat.Layout layout = "columnar".equalsIgnoreCase(json.optString("format"))
+                ? WireFormat.Layout.COLUMNAR
+                : WireFormat.Layout.ROWS;
+        return new Endpoint(
+                json.optString("id", fallbackId),
+                url,
+                json.optString("token", defaultToken),
+                new WireFormat(layout, json.optInt("gzip_threshold", WireFormat.GZIP_DISABLED)),
+                json.optBoolean("sealed", false));
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.smsforwarder;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-endpoint health state: a closed/open/half-open circuit breaker plus an exponential backoff
+ * schedule with jitter. Fed by {@link ApiClient} with the outcome of every request.
+ */
+public final class EndpointHealth {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long BASE_BACKOFF_MILLIS = 2_000L;
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60_000L;
+    private static final long UNKNOWN_LATENCY_MILLIS = 500L;
+    private static final Map<String, EndpointHealth> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String endpoint;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilMillis;
+    private boolean probeInFlight;
+    private long latencyMillis;
+
+    private EndpointHealth(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public static EndpointHealth forEndpoint(String endpoint) {
+        EndpointHealth health = REGISTRY.get(endpoint);
+        if (health == null) {
+            EndpointHealth created = new EndpointHealth(endpoint);
+            health = REGISTRY.putIfAbsent(endpoint, created);
+            if (health == null) {
+                health = created;
+            }
+        }
+        return health;
+    }
+
+    /**
+     * Forgets every endpoint's state. Test servers reuse ports, so one test's open breaker would
+     * otherwise carry over to the next test that lands on the same URL.
+     */
+    @VisibleForTesting
+    static void clearRegistry() {
+        REGISTRY.clear();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Returns how long a caller must wait before a request may go out, or 0 if it may go now.
+     * When the open period has elapsed the breaker moves to half-open and admits a single probe.
+     */
+    public synchronized long millisUntilAllowed() {
+        if (state == State.CLOSED) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN) {
+            if (now < openUntilMillis) {
+                return openUntilMillis - now;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (probeInFlight) {
+            return BASE_BACKOFF_MILLIS;
+        }
+        probeInFlight = true;
+        return 0;
+    }
+
+    /**
+     * Like {@link #millisUntilAllowed()} but without claiming the half-open probe, for callers
+     * that only want to know whether a request could go out.
+     */
+    public synchronized long millisUntilAvailable() {
+        if (state == State.CLOSED) {
+            return 0;
+        }
+        if (state == State.OPEN) {
+            return Math.max(0, openUntilMillis - System.currentTimeMillis());
+        }
+        return probeInFlight ? BASE_BACKOFF_MILLIS : 0;
+    }
+
+    /**
+     * Request-to-response-headers time, smoothed over recent requests.
+     */
+    public synchronized void recordLatency(long millis) {
+        if (millis < 0) {
+            return;
+        }
+        latencyMillis = latencyMillis == 0 ? Math.max(1, millis) : Math.max(1, latencyMillis + (millis - latencyMillis) / 4);
+    }
+
+    /**
+     * Smoothed latency, or a neutral guess until the first response has been timed.
+     */
+    public synchronized long getLatencyMillis() {
+        return latencyMillis == 0 ? UNKNOWN_LATENCY_MILLIS : latencyMillis;
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openUntilMillis = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openUntilMillis = System.currentTimeMillis() + nextBackoffMillis();
+        }
+    }
+
+    /**
+     * Exponential backoff on the number of consecutive failures, with equal jitter: half the
+     * delay is fixed and half is random, so a fleet of phones does not retry in lockstep.
+     */
+    public synchronized long nextBackoffMillis() {
+        if (consecutiveFailures == 0) {
+            return 0;
+        }
+        int exponent = Math.min(consecutiveFailures - 1, 20);
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << exponent);
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+}
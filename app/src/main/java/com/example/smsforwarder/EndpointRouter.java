@@ -0,0 +1,383 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Spreads batches over an ordered list of {@link Endpoint}s. Endpoints whose circuit breaker is
+ * open are skipped. Items that fail transiently on one endpoint are retried on the next one in
+ * the same call, so a dead primary costs one round trip rather than a trip through the retry
+ * table.
+ *
+ * <p>In {@link Mode#LATENCY_WEIGHTED} the first endpoint is picked at random with weight
+ * inversely proportional to its smoothed latency. With fan-out on, each batch goes to the two best
+ * endpoints at once and the first response that acknowledges everything wins, so one slow server
+ * does not set the end-to-end latency.
+ */
+public class EndpointRouter {
+    public enum Mode {
+        FAILOVER,
+        LATENCY_WEIGHTED
+    }
+
+    private static final String TAG = "EndpointRouter";
+    private static volatile EndpointRouter INSTANCE;
+
+    private final List<ApiClient> clients;
+    private final Mode mode;
+    private final boolean fanOut;
+
+    /**
+     * Built once per process from {@link AppPreferences#getEndpointConfig}; a changed
+     * configuration takes effect on the next start.
+     */
+    public static EndpointRouter getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (EndpointRouter.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = fromConfig(AppPreferences.getEndpointConfig(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @VisibleForTesting
+    EndpointRouter(List<ApiClient> clients, Mode mode, boolean fanOut) {
+        this.clients = clients;
+        this.mode = mode;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Reads {@code {"mode": "failover"|"latency", "fan_out": bool, "endpoints": [...]}}, each
+     * endpoint as described in {@link Endpoint#fromJson}. Falls back to the built-in endpoint if
+     * the configuration is missing or unusable.
+     */
+    static EndpointRouter fromConfig(String json) {
+        List<ApiClient> clients = new ArrayList<>();
+        Mode mode = Mode.FAILOVER;
+        boolean fanOut = false;
+        if (!TextUtils.isEmpty(json)) {
+            try {
+                JSONObject config = new JSONObject(json);
+                mode = "latency".equalsIgnoreCase(config.optString("mode")) ? Mode.LATENCY_WEIGHTED : Mode.FAILOVER;
+                fanOut = config.optBoolean("fan_out", false);
+                for (Endpoint endpoint : parseEndpoints(config)) {
+                    clients.add(new ApiClient(HttpClientProvider.get(), endpoint));
+                }
+            } catch (JSONException exception) {
+                Log.e(TAG, "Invalid endpoint configuration; using default: " + exception.getMessage());
+                clients.clear();
+            }
+        }
+        if (clients.isEmpty()) {
+            clients.add(new ApiClient(HttpClientProvider.get(), ApiClient.DEFAULT_ENDPOINT));
+        }
+        return new EndpointRouter(clients, mode, fanOut);
+    }
+
+    /**
+     * Whether {@link #fromConfig} would use {@code json} rather than fall back to the built-in
+     * endpoint. Lets the settings screen refuse a configuration before it is saved.
+     */
+    static boolean isValidConfig(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return false;
+        }
+        try {
+            return !parseEndpoints(new JSONObject(json)).isEmpty();
+        } catch (JSONException exception) {
+            return false;
+        }
+    }
+
+    private static List<Endpoint> parseEndpoints(JSONObject config) throws JSONException {
+        JSONArray array = config.getJSONArray("endpoints");
+        List<Endpoint> endpoints = new ArrayList<>(array.length());
+        for (int index = 0; index < array.length(); index++) {
+            Endpoint endpoint = Endpoint.fromJson(array.getJSONObject(index), "endpoint-" + index, ApiClient.TOKEN);
+            if (HttpUrl.parse(endpoint.url) == null) {
+                throw new JSONException("Invalid url for " + endpoint.id + ": " + endpoint.url);
+            }
+            endpoints.add(endpoint);
+        }
+        return endpoints;
+    }
+
+    /**
+     * 0 if at least one endpoint would take a request now, otherwise the shortest wait.
+     */
+    public long millisUntilAvailable() {
+        long wait = Long.MAX_VALUE;
+        for (ApiClient client : clients) {
+            wait = Math.min(wait, client.getEndpointHealth().millisUntilAvailable());
+        }
+        return wait;
+    }
+
+    /**
+     * Backoff of the endpoint that will recover first.
+     */
+    public long nextBackoffMillis() {
+        long backoff = Long.MAX_VALUE;
+        for (ApiClient client : clients) {
+            backoff = Math.min(backoff, client.getEndpointHealth().nextBackoffMillis());
+        }
+        return backoff;
+    }
+
+    public void prewarm() {
+        List<ApiClient> ranked = rank();
+        int count = fanOut ? 2 : 1;
+        for (int index = 0; index < ranked.size() && index < count; index++) {
+            ranked.get(index).prewarm();
+        }
+    }
+
+    public void setHeartbeatSource(ApiClient.HeartbeatSource source) {
+        for (ApiClient client : clients) {
+            client.setHeartbeatSource(source);
+        }
+    }
+
+    /**
+     * Sends a standalone heartbeat to the best available endpoint.
+     */
+    public void sendHeartbeatAsync(String heartbeat) {
+        List<ApiClient> ranked = rank();
+        if (ranked.isEmpty()) {
+            Log.d(TAG, "No endpoint available for heartbeat.");
+            return;
+        }
+        ranked.get(0).sendHeartbeatAsync(heartbeat);
+    }
+
+    public void setKeepAlive(boolean hasBacklog) {
+        List<ApiClient> ranked = rank();
+        ApiClient target = ranked.isEmpty() ? clients.get(0) : ranked.get(0);
+        target.setKeepAlive(hasBacklog);
+    }
+
+    /**
+     * Same contract as {@link ApiClient#sendPayloadsAsync}; each result carries the id of the
+     * endpoint that produced it.
+     */
+    public void sendPayloadsAsync(List<String> payloads, ApiClient.BatchCallback callback) {
+        List<ApiClient> ranked = rank();
+        if (fanOut && ranked.size() >= 2) {
+            sendFanOut(ranked, payloads, callback);
+        } else {
+            sendWithFailover(ranked, 0, payloads, callback);
+        }
+    }
+
+    private void sendWithFailover(List<ApiClient> ranked, int from, List<String> payloads,
+                                  ApiClient.BatchCallback callback) {
+        int index = acquireFrom(ranked, from);
+        if (index < 0) {
+            callback.onResults(uniformResults(payloads.size(),
+                    DeliveryResult.transientFailure("No endpoint available")));
+            return;
+        }
+        sendVia(ranked, index, payloads, callback);
+    }
+
+    /**
+     * Sends through {@code ranked[index]}, which the caller has already acquired.
+     */
+    private void sendVia(List<ApiClient> ranked, int index, List<String> payloads,
+                         ApiClient.BatchCallback callback) {
+        ApiClient client = ranked.get(index);
+        client.sendPayloadsAsync(payloads, results -> {
+            List<DeliveryResult> tagged = tag(results, client);
+            List<Integer> retry = new ArrayList<>();
+            for (int item = 0; item < tagged.size(); item++) {
+                if (tagged.get(item).status == DeliveryResult.Status.TRANSIENT) {
+                    retry.add(item);
+                }
+            }
+            if (retry.isEmpty() || !hasAvailableAfter(ranked, index)) {
+                callback.onResults(tagged);
+                return;
+            }
+            Log.w(TAG, "Failing over " + retry.size() + " items from " + client.getEndpoint().id);
+            List<String> retryPayloads = new ArrayList<>(retry.size());
+            for (int item : retry) {
+                retryPayloads.add(payloads.get(item));
+            }
+            sendWithFailover(ranked, index + 1, retryPayloads, retried -> {
+                for (int position = 0; position < retry.size(); position++) {
+                    int item = retry.get(position);
+                    tagged.set(item, betterOf(tagged.get(item), retried.get(position)));
+                }
+                callback.onResults(tagged);
+            });
+        });
+    }
+
+    private void sendFanOut(List<ApiClient> ranked, List<String> payloads, ApiClient.BatchCallback callback) {
+        int first = acquireFrom(ranked, 0);
+        int second = first < 0 ? -1 : acquireFrom(ranked, first + 1);
+        if (first < 0) {
+            sendWithFailover(ranked, ranked.size(), payloads, callback);
+            return;
+        }
+        if (second < 0) {
+            sendVia(ranked, first, payloads, callback);
+            return;
+        }
+        FanOut fanOutCall = new FanOut(callback);
+        ApiClient primary = ranked.get(first);
+        ApiClient secondary = ranked.get(second);
+        primary.sendPayloadsAsync(payloads, results -> fanOutCall.onResults(tag(results, primary)));
+        secondary.sendPayloadsAsync(payloads, results -> fanOutCall.onResults(tag(results, secondary)));
+    }
+
+    /**
+     * Completes a fan-out call on the first response that acknowledges every item, or merges both
+     * responses once they are in.
+     */
+    private static final class FanOut {
+        private final ApiClient.BatchCallback callback;
+        private List<DeliveryResult> pending;
+        private boolean delivered;
+
+        FanOut(ApiClient.BatchCallback callback) {
+            this.callback = callback;
+        }
+
+        void onResults(List<DeliveryResult> results) {
+            List<DeliveryResult> deliver;
+            synchronized (this) {
+                if (delivered) {
+                    return;
+                }
+                if (allAcked(results)) {
+                    deliver = results;
+                } else if (pending == null) {
+                    pending = results;
+                    return;
+                } else {
+                    deliver = new ArrayList<>(results.size());
+                    for (int item = 0; item < results.size(); item++) {
+                        deliver.add(betterOf(pending.get(item), results.get(item)));
+                    }
+                }
+                delivered = true;
+            }
+            callback.onResults(deliver);
+        }
+    }
+
+    /**
+     * Endpoints that would accept a request now, best first.
+     */
+    private List<ApiClient> rank() {
+        List<ApiClient> available = new ArrayList<>(clients.size());
+        for (ApiClient client : clients) {
+            if (client.getEndpointHealth().millisUntilAvailable() == 0) {
+                available.add(client);
+            }
+        }
+        if (mode != Mode.LATENCY_WEIGHTED || available.size() < 2) {
+            return available;
+        }
+        double total = 0;
+        for (ApiClient client : available) {
+            total += 1.0 / client.getEndpointHealth().getLatencyMillis();
+        }
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        ApiClient chosen = available.get(available.size() - 1);
+        for (ApiClient client : available) {
+            pick -= 1.0 / client.getEndpointHealth().getLatencyMillis();
+            if (pick < 0) {
+                chosen = client;
+                break;
+            }
+        }
+        available.remove(chosen);
+        Collections.sort(available, Comparator.comparingLong(client -> client.getEndpointHealth().getLatencyMillis()));
+        available.add(0, chosen);
+        return available;
+    }
+
+    /**
+     * Claims the first endpoint at or after {@code from} that admits a request, including its
+     * half-open probe slot. Returns -1 if none does.
+     */
+    private static int acquireFrom(List<ApiClient> ranked, int from) {
+        for (int index = from; index < ranked.size(); index++) {
+            if (ranked.get(index).getEndpointHealth().millisUntilAllowed() == 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasAvailableAfter(List<ApiClient> ranked, int index) {
+        for (int next = index + 1; next < ranked.size(); next++) {
+            if (ranked.get(next).getEndpointHealth().millisUntilAvailable() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<DeliveryResult> tag(List<DeliveryResult> results, ApiClient client) {
+        String endpointId = client.getEndpoint().id;
+        List<DeliveryResult> tagged = new ArrayList<>(results.size());
+        for (DeliveryResult result : results) {
+            tagged.add(result.withEndpoint(endpointId));
+        }
+        return tagged;
+    }
+
+    /**
+     * An acknowledgement from anywhere settles the item. Otherwise a transient failure beats a
+     * rejection, so the item is retried rather than dead-lettered on one endpoint's say-so.
+     */
+    private static DeliveryResult betterOf(DeliveryResult current, DeliveryResult candidate) {
+        if (current.status == DeliveryResult.Status.ACKED) {
+            return current;
+        }
+        if (candidate.status == DeliveryResult.Status.ACKED
+                || (candidate.status == DeliveryResult.Status.TRANSIENT
+                && current.status == DeliveryResult.Status.REJECTED)) {
+            return candidate;
+        }
+        return current;
+    }
+
+    private static boolean allAcked(List<DeliveryResult> results) {
+        for (DeliveryResult result : results) {
+            if (result.status != DeliveryResult.Status.ACKED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<DeliveryResult> uniformResults(int count, DeliveryResult result) {
+        List<DeliveryResult> results = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            results.add(result);
+        }
+        return results;
+    }
+}
@@ -1,20 +1,50 @@
 package com.example.smsforwarder;
 
 import androidx.room.Dao;
-import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
 
 import java.util.List;
 
+/**
+ * Bulk methods run as a single statement set inside one transaction, so settling a whole retry
+ * chunk costs one journal commit instead of one per row. Keep id lists under SQLite's bound
+ * parameter limit (999); retry chunks are far smaller.
+ */
 @Dao
 public interface FailedSmsDao {
-    @Query("SELECT * FROM failed_sms ORDER BY created_at ASC")
-    List<FailedSmsEntity> getAllFailed();
+    /**
+     * Keyset page over the retry table; pass the last id of the previous page to continue.
+     */
+    @Query("SELECT * FROM failed_sms WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<FailedSmsEntity> getFailedAfter(long afterId, int limit);
+
+    @Query("SELECT COUNT(*) FROM failed_sms")
+    int count();
+
+    /**
+     * Creation time of the oldest queued row, or null when the table is empty.
+     */
+    @Query("SELECT MIN(created_at) FROM failed_sms")
+    Long oldestCreatedAt();
+
+    /**
+     * Stored size of the text columns in bytes, as counted by the retention cap.
+     */
+    @Query("SELECT COALESCE(SUM(IFNULL(LENGTH(CAST(body AS BLOB)), 0)"
+            + " + IFNULL(LENGTH(CAST(sender AS BLOB)), 0)"
+            + " + IFNULL(LENGTH(CAST(parsed AS BLOB)), 0)), 0) FROM failed_sms")
+    long totalStoredBytes();
+
+    @Query("SELECT * FROM failed_sms ORDER BY created_at ASC, id ASC LIMIT :limit")
+    List<FailedSmsEntity> getOldest(int limit);
+
+    @Query("SELECT * FROM failed_sms WHERE created_at < :cutoff ORDER BY created_at ASC, id ASC LIMIT :limit")
+    List<FailedSmsEntity> getOlderThan(long cutoff, int limit);
 
     @Insert
-    long insert(FailedSmsEntity entity);
+    void insertAll(List<FailedSmsEntity> entities);
 
-    @Delete
-    void delete(FailedSmsEntity entity);
+    @Query("DELETE FROM failed_sms WHERE id IN (:ids)")
+    int deleteByIds(List<Long> ids);
 }
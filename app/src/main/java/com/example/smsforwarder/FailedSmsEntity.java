@@ -1,23 +1,143 @@
 package com.example.smsforwarder;
 
+import android.telephony.SubscriptionManager;
+
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "failed_sms")
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One SMS waiting in the retry queue, stored as typed columns. The JSON body is only produced by
+ * {@link #toPayload()} when the row is sent, so rows do not repeat field names and building a
+ * batch parses nothing.
+ */
+@Entity(tableName = "failed_sms", indices = {@Index(value = {"created_at"})})
 public class FailedSmsEntity {
     @PrimaryKey(autoGenerate = true)
     private long id;
 
-    @ColumnInfo(name = "payload")
-    private final String payload;
+    @ColumnInfo(name = "message_id")
+    private final String messageId;
+
+    @ColumnInfo(name = "sender")
+    private final String sender;
+
+    @ColumnInfo(name = "body")
+    private final String body;
+
+    @ColumnInfo(name = "receiver_number")
+    private final String receiverNumber;
+
+    @ColumnInfo(name = "receiver_iccid")
+    private final String receiverIccid;
+
+    @ColumnInfo(name = "subscription_id")
+    private final int subscriptionId;
+
+    @ColumnInfo(name = "received_at")
+    private final long receivedAt;
 
     @ColumnInfo(name = "created_at")
     private final long createdAt;
 
-    public FailedSmsEntity(String payload, long createdAt) {
-        this.payload = payload;
+    /** {@code parsed} object from {@link ParsedTransaction#toJson()}, kept as text; may be null. */
+    @ColumnInfo(name = "parsed")
+    private final String parsed;
+
+    public FailedSmsEntity(String messageId, String sender, String body, String receiverNumber,
+                           String receiverIccid, int subscriptionId, long receivedAt, long createdAt,
+                           String parsed) {
+        this.messageId = messageId;
+        this.sender = sender;
+        this.body = body;
+        this.receiverNumber = receiverNumber;
+        this.receiverIccid = receiverIccid;
+        this.subscriptionId = subscriptionId;
+        this.receivedAt = receivedAt;
         this.createdAt = createdAt;
+        this.parsed = parsed;
+    }
+
+    /**
+     * Splits a payload built by {@link ApiClient#buildBodyJson} into columns. Also accepts the
+     * legacy array form, which yields one row per element.
+     *
+     * @param createdAt used when the payload carries no {@code inserted_at}
+     */
+    static List<FailedSmsEntity> fromPayload(String payload, long createdAt) throws JSONException {
+        if (payload == null) {
+            throw new JSONException("Payload is null");
+        }
+        List<FailedSmsEntity> rows = new ArrayList<>(1);
+        String trimmed = payload.trim();
+        if (trimmed.startsWith("[")) {
+            JSONArray array = new JSONArray(trimmed);
+            for (int index = 0; index < array.length(); index++) {
+                rows.add(fromJson(array.getJSONObject(index), createdAt));
+            }
+        } else {
+            rows.add(fromJson(new JSONObject(trimmed), createdAt));
+        }
+        if (rows.isEmpty()) {
+            throw new JSONException("Payload array is empty");
+        }
+        return rows;
+    }
+
+    private static FailedSmsEntity fromJson(JSONObject json, long createdAt) {
+        long insertedAt = json.optLong("inserted_at", createdAt);
+        JSONObject parsed = json.optJSONObject("parsed");
+        return new FailedSmsEntity(
+                json.has("message_id") ? json.optString("message_id") : null,
+                json.optString("sender", null),
+                json.optString("content", null),
+                json.optString("receiver_number", null),
+                json.optString("receiver_iccid", ""),
+                json.optInt("subscription_id", SubscriptionManager.INVALID_SUBSCRIPTION_ID),
+                json.optLong("received_at", insertedAt),
+                insertedAt,
+                parsed == null ? null : parsed.toString());
+    }
+
+    /**
+     * The body object the server expects, with the same fields as {@link ApiClient#buildBodyJson}
+     * plus {@code inserted_at}.
+     */
+    public String toPayload() {
+        StringBuilder out = new StringBuilder(160 + (body == null ? 0 : body.length()));
+        out.append('{');
+        if (messageId != null) {
+            out.append("\"message_id\":").append(JSONObject.quote(messageId)).append(',');
+        }
+        appendString(out, "sender", sender);
+        appendString(out, "content", body);
+        appendString(out, "receiver_number", receiverNumber);
+        out.append("\"sent_at\":").append(receivedAt)
+                .append(",\"received_at\":").append(receivedAt).append(',');
+        appendString(out, "receiver_iccid", receiverIccid == null ? "" : receiverIccid);
+        if (subscriptionId != SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+            out.append("\"subscription_id\":").append(subscriptionId).append(',');
+        }
+        if (parsed != null) {
+            out.append("\"parsed\":").append(parsed).append(',');
+        }
+        out.append("\"inserted_at\":").append(createdAt).append('}');
+        return out.toString();
+    }
+
+    private static void appendString(StringBuilder out, String key, String value) {
+        // Absent values are left out, as JSONObject.put does with null.
+        if (value != null) {
+            out.append('"').append(key).append("\":").append(JSONObject.quote(value)).append(',');
+        }
     }
 
     public long getId() {
@@ -28,11 +148,39 @@ public class FailedSmsEntity {
         this.id = id;
     }
 
-    public String getPayload() {
-        return payload;
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public String getReceiverNumber() {
+        return receiverNumber;
+    }
+
+    public String getReceiverIccid() {
+        return receiverIccid;
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
     }
 
     public long getCreatedAt() {
         return createdAt;
     }
+
+    public String getParsed() {
+        return parsed;
+    }
 }
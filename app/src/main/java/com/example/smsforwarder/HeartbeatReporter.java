@@ -0,0 +1,158 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tells the server this phone is alive and how well it is keeping up, so deposits can be routed
+ * away from a phone that lags. It reports the SIMs, queue depth and the age of the oldest
+ * unsent message, the last acknowledgement, battery and network state, and the pipeline
+ * {@link Metrics}.
+ *
+ * <p>Each interval a fresh heartbeat is left for {@link ApiClient} to attach to the next batch it
+ * posts, which costs no extra request. It stays pending until a request carrying it succeeds. If
+ * it is still pending at the next interval, the phone is idle or its batches are failing, and the
+ * fresh heartbeat is posted on its own.
+ */
+public class HeartbeatReporter implements ApiClient.HeartbeatSource {
+    private static final String TAG = "HeartbeatReporter";
+    private static final long INTERVAL_MILLIS = 60_000L;
+    private static volatile HeartbeatReporter INSTANCE;
+
+    private final Context appContext;
+    private final LocalDatabase database;
+    private final EndpointRouter router;
+    private final SimInfoManager simInfoManager;
+    private final AtomicReference<String> pending = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private boolean started;
+
+    public static HeartbeatReporter getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (HeartbeatReporter.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new HeartbeatReporter(
+                            context.getApplicationContext(),
+                            LocalDatabase.getInstance(context),
+                            EndpointRouter.getInstance(context),
+                            SimInfoManager.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private HeartbeatReporter(Context appContext, LocalDatabase database, EndpointRouter router,
+                              SimInfoManager simInfoManager) {
+        this.appContext = appContext;
+        this.database = database;
+        this.router = router;
+        this.simInfoManager = simInfoManager;
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        router.setHeartbeatSource(this);
+        scheduler.scheduleWithFixedDelay(this::tick, 0, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String peek() {
+        return pending.get();
+    }
+
+    @Override
+    public void onDelivered(String heartbeat) {
+        // A newer heartbeat may have replaced it meanwhile; that one still has to go out.
+        pending.compareAndSet(heartbeat, null);
+    }
+
+    /**
+     * Never throws: a periodic task that throws is cancelled for good.
+     */
+    private void tick() {
+        try {
+            String fresh = build().toString();
+            // A heartbeat still pending means no batch delivered it for a whole interval.
+            if (pending.getAndSet(fresh) != null) {
+                router.sendHeartbeatAsync(fresh);
+            }
+        } catch (JSONException | RuntimeException exception) {
+            Log.e(TAG, "Heartbeat tick failed: " + exception.getMessage());
+        }
+    }
+
+    private JSONObject build() throws JSONException {
+        long now = System.currentTimeMillis();
+        JSONObject heartbeat = new JSONObject();
+        heartbeat.put("device", AppPreferences.getInstallId(appContext));
+        heartbeat.put("at", now);
+
+        JSONArray sims = new JSONArray();
+        List<SimInfoManager.SimEntry> entries = simInfoManager.snapshotEntries();
+        for (SimInfoManager.SimEntry entry : entries) {
+            sims.put(new JSONObject()
+                    .put("slot", entry.slotIndex)
+                    .put("number", entry.phoneNumber)
+                    .put("iccid", entry.iccid)
+                    .put("carrier", entry.carrierName));
+        }
+        heartbeat.put("sims", sims);
+
+        OutboxDao outboxDao = database.outboxDao();
+        FailedSmsDao failedSmsDao = database.failedSmsDao();
+        Long oldestOutbox = outboxDao.oldestUnackedCreatedAt();
+        Long oldestBacklog = failedSmsDao.oldestCreatedAt();
+        long oldest = Math.min(oldestOutbox == null ? now : oldestOutbox, oldestBacklog == null ? now : oldestBacklog);
+        heartbeat.put("queue", new JSONObject()
+                .put("outbox", outboxDao.countUnacked())
+                .put("backlog", failedSmsDao.count())
+                .put("oldest_age_ms", Math.max(0L, now - oldest)));
+        heartbeat.put("last_ack_at", Metrics.getLastAckAt());
+
+        BatteryManager battery = (BatteryManager) appContext.getSystemService(Context.BATTERY_SERVICE);
+        if (battery != null) {
+            heartbeat.put("battery", new JSONObject()
+                    .put("level", battery.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY))
+                    .put("charging", battery.isCharging()));
+        }
+        heartbeat.put("network", networkJson());
+        heartbeat.put("metrics", Metrics.toJson());
+        return heartbeat;
+    }
+
+    private JSONObject networkJson() throws JSONException {
+        JSONObject network = new JSONObject();
+        ConnectivityManager connectivity =
+                (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        Network active = connectivity != null ? connectivity.getActiveNetwork() : null;
+        NetworkCapabilities capabilities = active != null ? connectivity.getNetworkCapabilities(active) : null;
+        if (capabilities == null) {
+            return network.put("type", "none");
+        }
+        String type = capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) ? "wifi"
+                : capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR) ? "cellular"
+                : "other";
+        return network
+                .put("type", type)
+                .put("validated", capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED))
+                .put("metered", !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.smsforwarder;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Process-wide {@link OkHttpClient}, so every {@link ApiClient} shares one connection pool and
+ * dispatcher. Connections can be opened ahead of the first send ({@link #prewarm}) and kept open
+ * while a backlog is waiting ({@link #startKeepAlive}), which saves the DNS lookup and TLS
+ * handshake on the first request after idle.
+ */
+public final class HttpClientProvider {
+    public static final class Config {
+        public static final Config DEFAULT = new Config(5, TimeUnit.MINUTES.toMillis(5), 30_000L);
+
+        public final int maxIdleConnections;
+        public final long keepAliveMillis;
+        /** HTTP/2 ping interval; also how quickly a dead connection is noticed. 0 disables pings. */
+        public final long pingIntervalMillis;
+
+        public Config(int maxIdleConnections, long keepAliveMillis, long pingIntervalMillis) {
+            this.maxIdleConnections = Math.max(1, maxIdleConnections);
+            this.keepAliveMillis = Math.max(1_000L, keepAliveMillis);
+            this.pingIntervalMillis = Math.max(0L, pingIntervalMillis);
+        }
+    }
+
+    private static final String TAG = "HttpClientProvider";
+    private static final long TIMEOUT_SECONDS = 15;
+
+    private static final Config config = Config.DEFAULT;
+    private static volatile OkHttpClient client;
+    private static ScheduledExecutorService keepAliveScheduler;
+    private static ScheduledFuture<?> keepAliveTask;
+    private static String keepAliveUrl;
+
+    private HttpClientProvider() {
+    }
+
+    public static OkHttpClient get() {
+        OkHttpClient current = client;
+        if (current == null) {
+            synchronized (HttpClientProvider.class) {
+                current = client;
+                if (current == null) {
+                    current = new OkHttpClient.Builder()
+                            .connectionPool(new ConnectionPool(
+                                    config.maxIdleConnections, config.keepAliveMillis, TimeUnit.MILLISECONDS))
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .pingInterval(config.pingIntervalMillis, TimeUnit.MILLISECONDS)
+                            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .build();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Opens a pooled connection to the endpoint's host with a HEAD request to its root, so the
+     * endpoint itself never sees an empty submission.
+     */
+    public static void prewarm(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) {
+            return;
+        }
+        HttpUrl root = parsed.newBuilder().encodedPath("/").query(null).build();
+        Request request = new Request.Builder().url(root).head().build();
+        get().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, "Pre-warm failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
+
+    /**
+     * Re-warms the connection to {@code url} just before the pool would evict it, until
+     * {@link #stopKeepAlive()} is called.
+     */
+    public static synchronized void startKeepAlive(String url) {
+        if (keepAliveTask != null && url.equals(keepAliveUrl)) {
+            return;
+        }
+        stopKeepAlive();
+        if (keepAliveScheduler == null) {
+            keepAliveScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        long interval = Math.max(1_000L, config.keepAliveMillis - 15_000L);
+        keepAliveUrl = url;
+        keepAliveTask = keepAliveScheduler.scheduleWithFixedDelay(
+                () -> prewarm(url), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopKeepAlive() {
+        if (keepAliveTask != null) {
+            keepAliveTask.cancel(false);
+            keepAliveTask = null;
+            keepAliveUrl = null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.smsforwarder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a fixed keyword set, case-insensitive. One pass over the text finds
+ * whether any keyword occurs anywhere in it, and matching allocates nothing.
+ */
+final class KeywordMatcher {
+    static final KeywordMatcher EMPTY = compile(new ArrayList<String>());
+
+    // Per state: sorted outgoing characters and the state each one leads to.
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    private final boolean[] output;
+    private final int keywordCount;
+
+    private KeywordMatcher(char[][] edgeChars, int[][] edgeTargets, int[] fail, boolean[] output, int keywordCount) {
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.output = output;
+        this.keywordCount = keywordCount;
+    }
+
+    static KeywordMatcher compile(Collection<String> keywords) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(false);
+        int count = 0;
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.trim().isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            String trimmed = keyword.trim();
+            for (int index = 0; index < trimmed.length(); index++) {
+                char c = fold(trimmed.charAt(index));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(false);
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            terminal.set(state, true);
+            count++;
+        }
+
+        int size = trie.size();
+        char[][] edgeChars = new char[size][];
+        int[][] edgeTargets = new int[size][];
+        boolean[] output = new boolean[size];
+        for (int state = 0; state < size; state++) {
+            TreeMap<Character, Integer> edges = trie.get(state);
+            edgeChars[state] = new char[edges.size()];
+            edgeTargets[state] = new int[edges.size()];
+            int position = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[state][position] = edge.getKey();
+                edgeTargets[state][position] = edge.getValue();
+                position++;
+            }
+            output[state] = terminal.get(state);
+        }
+
+        // Breadth-first, so a state's failure link is final before its children need it.
+        int[] fail = new int[size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int position = 0; position < edgeChars[state].length; position++) {
+                char c = edgeChars[state][position];
+                int child = edgeTargets[state][position];
+                int fallback = fail[state];
+                int target = step(edgeChars, edgeTargets, fallback, c);
+                while (target < 0 && fallback != 0) {
+                    fallback = fail[fallback];
+                    target = step(edgeChars, edgeTargets, fallback, c);
+                }
+                fail[child] = target >= 0 ? target : 0;
+                output[child] |= output[fail[child]];
+                queue.add(child);
+            }
+        }
+        return new KeywordMatcher(edgeChars, edgeTargets, fail, output, count);
+    }
+
+    boolean isEmpty() {
+        return keywordCount == 0;
+    }
+
+    boolean matchesAny(CharSequence text) {
+        if (keywordCount == 0 || text == null) {
+            return false;
+        }
+        int state = 0;
+        for (int index = 0; index < text.length(); index++) {
+            char c = fold(text.charAt(index));
+            int next = step(edgeChars, edgeTargets, state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = step(edgeChars, edgeTargets, state, c);
+            }
+            state = next >= 0 ? next : 0;
+            if (output[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int step(char[][] edgeChars, int[][] edgeTargets, int state, char c) {
+        char[] chars = edgeChars[state];
+        int low = 0;
+        int high = chars.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (chars[mid] < c) {
+                low = mid + 1;
+            } else if (chars[mid] > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[state][mid];
+            }
+        }
+        return -1;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+}
@@ -1,18 +1,142 @@
 package com.example.smsforwarder;
 
 import android.content.Context;
+import android.database.Cursor;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
 
-@Database(entities = {FailedSmsEntity.class}, version = 1, exportSchema = false)
+import org.json.JSONException;
+
+@Database(entities = {FailedSmsEntity.class, OutboxEntity.class, DeadLetterEntity.class, DedupEntity.class},
+        version = 6, exportSchema = false)
 public abstract class LocalDatabase extends RoomDatabase {
     private static final String DB_NAME = "sms_forwarder.db";
     private static volatile LocalDatabase INSTANCE;
 
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `outbox` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`payload` TEXT, "
+                    + "`state` INTEGER NOT NULL, "
+                    + "`attempts` INTEGER NOT NULL, "
+                    + "`created_at` INTEGER NOT NULL, "
+                    + "`updated_at` INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_outbox_state` ON `outbox` (`state`)");
+        }
+    };
+
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `dead_letter_sms` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`payload` TEXT, "
+                    + "`reason` TEXT, "
+                    + "`created_at` INTEGER NOT NULL, "
+                    + "`dead_at` INTEGER NOT NULL)");
+        }
+    };
+
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sms_dedup` ("
+                    + "`message_id` TEXT NOT NULL, "
+                    + "`seen_at` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`message_id`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_dedup_seen_at` ON `sms_dedup` (`seen_at`)");
+        }
+    };
+
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_failed_sms_created_at` ON `failed_sms` (`created_at`)");
+        }
+    };
+
+    /**
+     * Splits each JSON payload in {@code failed_sms} into typed columns. Rows whose payload does
+     * not parse are moved to {@code dead_letter_sms} rather than dropped.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `failed_sms_typed` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`message_id` TEXT, "
+                    + "`sender` TEXT, "
+                    + "`body` TEXT, "
+                    + "`receiver_number` TEXT, "
+                    + "`receiver_iccid` TEXT, "
+                    + "`subscription_id` INTEGER NOT NULL, "
+                    + "`received_at` INTEGER NOT NULL, "
+                    + "`created_at` INTEGER NOT NULL, "
+                    + "`parsed` TEXT)");
+            SupportSQLiteStatement insertRow = db.compileStatement("INSERT INTO `failed_sms_typed` "
+                    + "(`message_id`, `sender`, `body`, `receiver_number`, `receiver_iccid`, `subscription_id`, "
+                    + "`received_at`, `created_at`, `parsed`) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            SupportSQLiteStatement insertDead = db.compileStatement("INSERT INTO `dead_letter_sms` "
+                    + "(`payload`, `reason`, `created_at`, `dead_at`) VALUES (?, ?, ?, ?)");
+            long now = System.currentTimeMillis();
+            try (Cursor cursor = db.query("SELECT `payload`, `created_at` FROM `failed_sms` ORDER BY `id`")) {
+                while (cursor.moveToNext()) {
+                    String payload = cursor.getString(0);
+                    long createdAt = cursor.getLong(1);
+                    try {
+                        for (FailedSmsEntity row : FailedSmsEntity.fromPayload(payload, createdAt)) {
+                            insertRow.clearBindings();
+                            bindText(insertRow, 1, row.getMessageId());
+                            bindText(insertRow, 2, row.getSender());
+                            bindText(insertRow, 3, row.getBody());
+                            bindText(insertRow, 4, row.getReceiverNumber());
+                            bindText(insertRow, 5, row.getReceiverIccid());
+                            insertRow.bindLong(6, row.getSubscriptionId());
+                            insertRow.bindLong(7, row.getReceivedAt());
+                            insertRow.bindLong(8, row.getCreatedAt());
+                            bindText(insertRow, 9, row.getParsed());
+                            insertRow.executeInsert();
+                        }
+                    } catch (JSONException exception) {
+                        insertDead.clearBindings();
+                        bindText(insertDead, 1, payload);
+                        insertDead.bindString(2, "Corrupt payload during migration");
+                        insertDead.bindLong(3, createdAt);
+                        insertDead.bindLong(4, now);
+                        insertDead.executeInsert();
+                    }
+                }
+            }
+            db.execSQL("DROP TABLE `failed_sms`");
+            db.execSQL("ALTER TABLE `failed_sms_typed` RENAME TO `failed_sms`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_failed_sms_created_at` ON `failed_sms` (`created_at`)");
+        }
+    };
+
+    private static void bindText(SupportSQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
     public abstract FailedSmsDao failedSmsDao();
 
+    public abstract OutboxDao outboxDao();
+
+    public abstract DeadLetterDao deadLetterDao();
+
+    public abstract DedupDao dedupDao();
+
     public static LocalDatabase getInstance(Context context) {
         if (INSTANCE == null) {
             synchronized (LocalDatabase.class) {
@@ -21,7 +145,13 @@ public abstract class LocalDatabase extends RoomDatabase {
                             context.getApplicationContext(),
                             LocalDatabase.class,
                             DB_NAME)
-                            .fallbackToDestructiveMigration()
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                                    MIGRATION_5_6)
+                            // Readers (backlog counts, the UI) no longer block the ingest writer.
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                            // Every upgrade path from version 1 is covered, so queued messages
+                            // are only ever discarded on a downgrade.
+                            .fallbackToDestructiveMigrationOnDowngrade()
                             .build();
                 }
             }
@@ -1,6 +1,8 @@
 package com.example.smsforwarder;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.widget.Toast;
 
@@ -13,7 +15,19 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import okhttp3.HttpUrl;
+
 public class MainActivity extends AppCompatActivity {
+    private static final long METRICS_REFRESH_MILLIS = 1_000L;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable metricsRefresher = new Runnable() {
+        @Override
+        public void run() {
+            binding.textMetrics.setText(Metrics.describe());
+            handler.postDelayed(this, METRICS_REFRESH_MILLIS);
+        }
+    };
     private ActivityMainBinding binding;
 
     @Override
@@ -24,10 +38,16 @@ public class MainActivity extends AppCompatActivity {
 
         binding.edtPhoneNumber.setText(AppPreferences.getFallbackReceiverNumber(this));
         binding.btnSavePhoneNumber.setOnClickListener(view -> saveReceiverNumber());
+        binding.edtEndpointConfig.setText(AppPreferences.getEndpointConfig(this));
+        binding.btnSaveEndpointConfig.setOnClickListener(view -> saveEndpointConfig());
+        binding.edtFilterConfigUrl.setText(AppPreferences.getFilterConfigUrl(this));
+        binding.btnSaveFilterConfigUrl.setOnClickListener(view -> saveFilterConfigUrl());
         renderSimInfo();
 
         if (!PermissionsHelper.hasSmsPermissions(this)) {
             PermissionsHelper.requestSmsPermissions(this);
+        } else {
+            SmsService.start(this);
         }
     }
 
@@ -36,6 +56,13 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         binding.edtPhoneNumber.setText(AppPreferences.getFallbackReceiverNumber(this));
         renderSimInfo();
+        handler.post(metricsRefresher);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(metricsRefresher);
     }
 
     private void renderSimInfo() {
@@ -43,8 +70,9 @@ public class MainActivity extends AppCompatActivity {
             binding.textSimInfo.setText(R.string.permission_rationale);
             return;
         }
-        SimInfoManager simInfoManager = new SimInfoManager();
-        simInfoManager.refresh(this);
+        // The permission may have just been granted; rebuild rather than trust the cache.
+        SimInfoManager simInfoManager = SimInfoManager.getInstance(this);
+        simInfoManager.refresh();
         List<SimInfoManager.SimEntry> entries = simInfoManager.snapshotEntries();
         if (entries.isEmpty()) {
             binding.textSimInfo.setText(R.string.no_sim_detected);
@@ -80,6 +108,35 @@ public class MainActivity extends AppCompatActivity {
         Toast.makeText(this, R.string.receiver_saved, Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * Empty text restores the built-in endpoint. The router is built once per process, so the
+     * new routing applies after a restart.
+     */
+    private void saveEndpointConfig() {
+        String config = binding.edtEndpointConfig.getText().toString().trim();
+        if (!config.isEmpty() && !EndpointRouter.isValidConfig(config)) {
+            Toast.makeText(this, R.string.endpoint_config_invalid, Toast.LENGTH_LONG).show();
+            return;
+        }
+        AppPreferences.saveEndpointConfig(this, config);
+        Toast.makeText(this, R.string.endpoint_config_saved, Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Saves the rule source and fetches it right away; empty text stops remote refreshes and
+     * keeps the rules already stored.
+     */
+    private void saveFilterConfigUrl() {
+        String url = binding.edtFilterConfigUrl.getText().toString().trim();
+        if (!url.isEmpty() && HttpUrl.parse(url) == null) {
+            Toast.makeText(this, R.string.filter_config_url_invalid, Toast.LENGTH_LONG).show();
+            return;
+        }
+        AppPreferences.saveFilterConfigUrl(this, url);
+        SmsFilter.getInstance(this).refreshFromRemote();
+        Toast.makeText(this, R.string.filter_config_url_saved, Toast.LENGTH_SHORT).show();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
@@ -88,6 +145,7 @@ public class MainActivity extends AppCompatActivity {
                 Toast.makeText(this, R.string.permission_rationale, Toast.LENGTH_LONG).show();
             } else {
                 renderSimInfo();
+                SmsService.start(this);
             }
         }
     }
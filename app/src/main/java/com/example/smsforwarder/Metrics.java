@@ -0,0 +1,106 @@
+package com.example.smsforwarder;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters, gauges and latency histograms for the forwarding path. Everything is
+ * lock-free, so the hot path can record without contention. Values reset when the process
+ * restarts.
+ */
+public final class Metrics {
+    /** SMS handed to {@link SmsPipeline}. */
+    public static final LongAdder RECEIVED = new LongAdder();
+    /** SMS dropped by {@link SmsFilter} or as duplicates. */
+    public static final LongAdder FILTERED = new LongAdder();
+    /** Items the server acknowledged, live or replayed. */
+    public static final LongAdder SENT = new LongAdder();
+    /** Items that failed a send, transiently or permanently. */
+    public static final LongAdder FAILED = new LongAdder();
+    /** Items sent again from the retry queue. */
+    public static final LongAdder RETRIED = new LongAdder();
+    /** Request body bytes written to the network, after compression. */
+    public static final LongAdder BYTES_SENT = new LongAdder();
+
+    /** From {@link SmsPipeline#submit} until the outbox row is committed. */
+    public static final LatencyHistogram RECEIVE_TO_PERSIST = new LatencyHistogram();
+    /** From the outbox commit until the server acknowledges the item. */
+    public static final LatencyHistogram PERSIST_TO_ACK = new LatencyHistogram();
+    /** One HTTP request, request sent to response headers received. */
+    public static final LatencyHistogram HTTP_ROUND_TRIP = new LatencyHistogram();
+
+    private static final AtomicLong PIPELINE_DEPTH = new AtomicLong();
+    private static final AtomicLong BACKLOG_DEPTH = new AtomicLong();
+    private static final AtomicLong LAST_ACK_AT = new AtomicLong();
+
+    private Metrics() {
+    }
+
+    public static void setPipelineDepth(long depth) {
+        PIPELINE_DEPTH.set(depth);
+    }
+
+    public static void setBacklogDepth(long depth) {
+        BACKLOG_DEPTH.set(depth);
+    }
+
+    /**
+     * Records a successful response from any endpoint, in wall-clock millis.
+     */
+    public static void markAck(long now) {
+        LAST_ACK_AT.accumulateAndGet(now, Math::max);
+    }
+
+    /**
+     * Wall-clock time of the last successful response, or 0 if there has been none.
+     */
+    public static long getLastAckAt() {
+        return LAST_ACK_AT.get();
+    }
+
+    /**
+     * Compact form for reporting: short keys, latencies as {@code [p50, p99, max]} in ms.
+     */
+    public static JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("rx", RECEIVED.sum());
+        json.put("flt", FILTERED.sum());
+        json.put("ok", SENT.sum());
+        json.put("fail", FAILED.sum());
+        json.put("rty", RETRIED.sum());
+        json.put("bytes", BYTES_SENT.sum());
+        json.put("depth", PIPELINE_DEPTH.get());
+        json.put("backlog", BACKLOG_DEPTH.get());
+        json.put("persist", latencyJson(RECEIVE_TO_PERSIST));
+        json.put("ack", latencyJson(PERSIST_TO_ACK));
+        json.put("http", latencyJson(HTTP_ROUND_TRIP));
+        return json;
+    }
+
+    /**
+     * Multi-line summary for the status screen.
+     */
+    public static String describe() {
+        return String.format(Locale.US,
+                "Received %d, filtered %d\nSent %d, failed %d, retried %d\nQueue %d, backlog %d, %d KB sent\n"
+                        + "Persist p50/p99 %d/%d ms\nAck p50/p99 %d/%d ms\nHTTP p50/p99 %d/%d ms",
+                RECEIVED.sum(), FILTERED.sum(),
+                SENT.sum(), FAILED.sum(), RETRIED.sum(),
+                PIPELINE_DEPTH.get(), BACKLOG_DEPTH.get(), BYTES_SENT.sum() / 1024,
+                RECEIVE_TO_PERSIST.percentile(50), RECEIVE_TO_PERSIST.percentile(99),
+                PERSIST_TO_ACK.percentile(50), PERSIST_TO_ACK.percentile(99),
+                HTTP_ROUND_TRIP.percentile(50), HTTP_ROUND_TRIP.percentile(99));
+    }
+
+    private static JSONArray latencyJson(LatencyHistogram histogram) {
+        return new JSONArray()
+                .put(histogram.percentile(50))
+                .put(histogram.percentile(99))
+                .put(histogram.getMax());
+    }
+}
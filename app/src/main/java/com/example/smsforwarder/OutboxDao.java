@@ -0,0 +1,51 @@
+package com.example.smsforwarder;
+
+import androidx.room.Dao;
+import androidx.room.Delete;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface OutboxDao {
+    @Insert
+    long insert(OutboxEntity entity);
+
+    @Query("SELECT * FROM outbox WHERE state = :state ORDER BY id ASC LIMIT :limit")
+    List<OutboxEntity> getByState(int state, int limit);
+
+    /**
+     * Moves pending rows to in-flight and bumps their attempt counters in one statement. Rows
+     * already claimed or gone are skipped; returns how many were claimed.
+     */
+    @Query("UPDATE outbox SET state = 1, attempts = attempts + 1, updated_at = :now WHERE id IN (:ids) AND state = 0")
+    int claimAll(List<Long> ids, long now);
+
+    @Query("UPDATE outbox SET state = :state, updated_at = :now WHERE id = :id")
+    int updateState(long id, int state, long now);
+
+    @Query("SELECT * FROM outbox WHERE state = 1 AND attempts >= :maxAttempts")
+    List<OutboxEntity> getExhaustedInFlight(int maxAttempts);
+
+    @Query("UPDATE outbox SET state = 0, updated_at = :now WHERE state = 1")
+    int resetInFlight(long now);
+
+    @Query("SELECT COUNT(*) FROM outbox WHERE state != 2")
+    int countUnacked();
+
+    /**
+     * Creation time of the oldest row not yet acknowledged, or null if there is none.
+     */
+    @Query("SELECT MIN(created_at) FROM outbox WHERE state != 2")
+    Long oldestUnackedCreatedAt();
+
+    @Query("DELETE FROM outbox WHERE state = 2")
+    int deleteAcked();
+
+    @Delete
+    void delete(OutboxEntity entity);
+
+    @Query("DELETE FROM outbox WHERE id IN (:ids)")
+    int deleteByIds(List<Long> ids);
+}
@@ -0,0 +1,81 @@
+package com.example.smsforwarder;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Write-ahead record of an SMS payload that has not yet been acknowledged by the server.
+ */
+@Entity(tableName = "outbox", indices = {@Index(value = {"state"})})
+public class OutboxEntity {
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_IN_FLIGHT = 1;
+    public static final int STATE_ACKED = 2;
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    @ColumnInfo(name = "payload")
+    private final String payload;
+
+    @ColumnInfo(name = "state")
+    private int state;
+
+    @ColumnInfo(name = "attempts")
+    private int attempts;
+
+    @ColumnInfo(name = "created_at")
+    private final long createdAt;
+
+    @ColumnInfo(name = "updated_at")
+    private long updatedAt;
+
+    public OutboxEntity(String payload, long createdAt) {
+        this.payload = payload;
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
+        this.state = STATE_PENDING;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public void setState(int state) {
+        this.state = state;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-ahead outbox for incoming SMS payloads. Every payload is committed to the {@code outbox}
+ * table before any network call is made, and a single drain loop sends from that table. A row is
+ * only removed once the server has acknowledged it, so a process kill mid-request cannot lose it.
+ */
+public class OutboxManager {
+    private static final String TAG = "OutboxManager";
+    private static final int DRAIN_BATCH_LIMIT = 50;
+    private static final int MAX_ATTEMPTS = 3;
+    // Stays under SQLite's 999 bound-parameter limit for IN (...) deletes.
+    private static final int BULK_LIMIT = 500;
+    private static volatile OutboxManager INSTANCE;
+
+    private final Context appContext;
+    private final LocalDatabase database;
+    private final OutboxDao outboxDao;
+    private final DedupDao dedupDao;
+    private final FailedSmsDao failedSmsDao;
+    private final DeadLetterDao deadLetterDao;
+    private final BatchingSender batchingSender;
+    private final ExecutorService drainExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean drainQueued = new AtomicBoolean(false);
+
+    /**
+     * The outbox is process-wide: its drain loop and open batch must outlive any single service
+     * instance so that in-flight callbacks always land somewhere.
+     */
+    public static OutboxManager getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (OutboxManager.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new OutboxManager(
+                            context.getApplicationContext(),
+                            LocalDatabase.getInstance(context),
+                            PrioritySender.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @VisibleForTesting
+    OutboxManager(Context appContext, LocalDatabase database, PrioritySender sender) {
+        this.appContext = appContext;
+        this.database = database;
+        this.outboxDao = database.outboxDao();
+        this.dedupDao = database.dedupDao();
+        this.failedSmsDao = database.failedSmsDao();
+        this.deadLetterDao = database.deadLetterDao();
+        this.batchingSender = new BatchingSender(sender, BatchingSender.Config.DEFAULT);
+        drainExecutor.execute(this::recoverInFlight);
+        requestDrain();
+    }
+
+    /**
+     * Durably stores the payload as pending, together with its dedup row. Must be called off the
+     * main thread; when it returns the rows have been committed.
+     *
+     * @param messageId idempotency key, or null to skip deduplication
+     * @return the outbox row id, or -1 if the message id was already recorded and nothing was
+     *         stored
+     */
+    public long enqueue(String payload, long createdAt, String messageId) {
+        return database.runInTransaction(() -> {
+            if (messageId != null && dedupDao.insert(new DedupEntity(messageId, createdAt)) == -1L) {
+                return -1L;
+            }
+            return outboxDao.insert(new OutboxEntity(payload, createdAt));
+        });
+    }
+
+    /**
+     * Schedules a drain pass. Requests made while a pass is already queued are coalesced.
+     */
+    public void requestDrain() {
+        if (drainQueued.compareAndSet(false, true)) {
+            drainExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Rows left in flight by a previous process never got an answer. Put them back in the queue,
+     * or hand them to the retry table once they have used up their attempts. Runs once, before the
+     * first drain, so rows in flight for a live request are never reset.
+     */
+    private void recoverInFlight() {
+        List<OutboxEntity> exhausted = outboxDao.getExhaustedInFlight(MAX_ATTEMPTS);
+        for (int from = 0; from < exhausted.size(); from += BULK_LIMIT) {
+            moveAllToFailed(exhausted.subList(from, Math.min(exhausted.size(), from + BULK_LIMIT)));
+        }
+        int reset = outboxDao.resetInFlight(System.currentTimeMillis());
+        if (reset > 0) {
+            Log.w(TAG, "Recovered " + reset + " in-flight outbox rows.");
+        }
+    }
+
+    private void drain() {
+        drainQueued.set(false);
+        outboxDao.deleteAcked();
+        // Read and claim the page in one transaction: one commit, and no row can change between.
+        List<OutboxEntity> pending = database.runInTransaction(() -> {
+            List<OutboxEntity> page = outboxDao.getByState(OutboxEntity.STATE_PENDING, DRAIN_BATCH_LIMIT);
+            if (!page.isEmpty()) {
+                List<Long> ids = new ArrayList<>(page.size());
+                for (OutboxEntity entity : page) {
+                    ids.add(entity.getId());
+                }
+                outboxDao.claimAll(ids, System.currentTimeMillis());
+            }
+            return page;
+        });
+        for (OutboxEntity entity : pending) {
+            send(entity);
+        }
+        if (pending.size() == DRAIN_BATCH_LIMIT) {
+            requestDrain();
+        }
+    }
+
+    private void send(OutboxEntity entity) {
+        batchingSender.submit(entity.getPayload(), result -> drainExecutor.execute(() -> {
+            switch (result.status) {
+                case ACKED:
+                    outboxDao.updateState(entity.getId(), OutboxEntity.STATE_ACKED, System.currentTimeMillis());
+                    Metrics.SENT.increment();
+                    Metrics.PERSIST_TO_ACK.record(System.currentTimeMillis() - entity.getCreatedAt());
+                    break;
+                case REJECTED:
+                    Metrics.FAILED.increment();
+                    Log.w(TAG, "Outbox row rejected; dead-lettering id=" + entity.getId() + ": " + result.reason);
+                    moveToDeadLetter(entity, result.reason);
+                    break;
+                default:
+                    Metrics.FAILED.increment();
+                    Log.e(TAG, "Outbox send failure: " + result.reason);
+                    moveToFailed(entity);
+                    break;
+            }
+        }));
+    }
+
+    private void moveToDeadLetter(OutboxEntity entity, String reason) {
+        database.runInTransaction(() -> {
+            deadLetterDao.insert(new DeadLetterEntity(
+                    entity.getPayload(), reason, entity.getCreatedAt(), System.currentTimeMillis()));
+            outboxDao.delete(entity);
+        });
+    }
+
+    /**
+     * Hands a row over to the retry table in one transaction so it is never in both or neither,
+     * then makes sure a drain is queued for it.
+     */
+    private void moveToFailed(OutboxEntity entity) {
+        moveAllToFailed(Collections.singletonList(entity));
+    }
+
+    /**
+     * Payloads are split into typed columns here, once, so retries never parse them again. A
+     * payload that does not parse could never be sent and is dead-lettered instead.
+     */
+    private void moveAllToFailed(List<OutboxEntity> entities) {
+        List<FailedSmsEntity> failed = new ArrayList<>(entities.size());
+        List<DeadLetterEntity> corrupt = new ArrayList<>();
+        List<Long> ids = new ArrayList<>(entities.size());
+        long now = System.currentTimeMillis();
+        for (OutboxEntity entity : entities) {
+            try {
+                failed.addAll(FailedSmsEntity.fromPayload(entity.getPayload(), entity.getCreatedAt()));
+            } catch (JSONException exception) {
+                Log.e(TAG, "Corrupt outbox payload; dead-lettering id=" + entity.getId());
+                corrupt.add(new DeadLetterEntity(entity.getPayload(), "Corrupt payload", entity.getCreatedAt(), now));
+            }
+            ids.add(entity.getId());
+        }
+        database.runInTransaction(() -> {
+            failedSmsDao.insertAll(failed);
+            if (!corrupt.isEmpty()) {
+                deadLetterDao.insertAll(corrupt);
+            }
+            outboxDao.deleteByIds(ids);
+        });
+        int backlog = failedSmsDao.count();
+        Metrics.setBacklogDepth(backlog);
+        RetryDrainWorker.enqueueForBacklog(appContext, backlog);
+    }
+}
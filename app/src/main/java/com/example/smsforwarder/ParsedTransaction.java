@@ -0,0 +1,50 @@
+package com.example.smsforwarder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Structured fields pulled out of a bank SMS. Anything the template did not find is null.
+ */
+public final class ParsedTransaction {
+    public enum Confidence {
+        /** A bank-specific template matched amount, account and a reference or balance. */
+        HIGH,
+        /** Only some fields were found, or only the generic template matched. */
+        LOW
+    }
+
+    public final String bank;
+    /** Signed amount in VND: positive for credits, negative for debits. */
+    public final Long amount;
+    public final String account;
+    public final String reference;
+    public final Long balance;
+    public final Confidence confidence;
+
+    public ParsedTransaction(String bank, Long amount, String account, String reference, Long balance,
+                             Confidence confidence) {
+        this.bank = bank;
+        this.amount = amount;
+        this.account = account;
+        this.reference = reference;
+        this.balance = balance;
+        this.confidence = confidence;
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("bank", bank);
+        json.put("currency", "VND");
+        if (amount != null) {
+            json.put("amount", amount.longValue());
+        }
+        json.put("account", account);
+        json.put("reference", reference);
+        if (balance != null) {
+            json.put("balance", balance.longValue());
+        }
+        json.put("confidence", confidence == Confidence.HIGH ? "high" : "low");
+        return json;
+    }
+}
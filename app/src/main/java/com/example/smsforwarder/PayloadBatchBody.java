@@ -0,0 +1,93 @@
+package com.example.smsforwarder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Utf8;
+
+/**
+ * Streams {@code {"token": ..., "heartbeat": {...}, "data": [...]}} straight into the request
+ * sink; the heartbeat is optional. Stored payloads
+ * are already serialized JSON objects, so they are spliced in as-is instead of being parsed into
+ * a DOM and written back out.
+ */
+final class PayloadBatchBody extends RequestBody {
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json; charset=utf-8");
+
+    private final String prefix;
+    private final List<String> payloads;
+    private final long contentLength;
+
+    PayloadBatchBody(String token, List<String> payloads) {
+        this(token, null, payloads);
+    }
+
+    /**
+     * @param heartbeat serialized heartbeat object spliced in verbatim, or null
+     */
+    PayloadBatchBody(String token, String heartbeat, List<String> payloads) {
+        this.prefix = "{\"token\":" + JSONObject.quote(token)
+                + (heartbeat != null ? ",\"heartbeat\":" + heartbeat : "")
+                + ",\"data\":";
+        this.payloads = payloads;
+        long length = Utf8.size(prefix) + 3 + Math.max(0, payloads.size() - 1);
+        for (String payload : payloads) {
+            length += Utf8.size(payload);
+        }
+        this.contentLength = length;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON_MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        sink.writeUtf8(prefix);
+        writeArray(sink, payloads);
+        sink.writeByte('}');
+    }
+
+    /**
+     * Writes {@code [p1,p2,...]} with each payload copied verbatim.
+     */
+    static void writeArray(BufferedSink sink, List<String> payloads) throws IOException {
+        sink.writeByte('[');
+        for (int index = 0; index < payloads.size(); index++) {
+            if (index > 0) {
+                sink.writeByte(',');
+            }
+            sink.writeUtf8(payloads.get(index));
+        }
+        sink.writeByte(']');
+    }
+
+    /**
+     * Whether a stored payload is exactly one well-formed JSON object. Anything that passes is
+     * spliced into the request verbatim, so one malformed row would otherwise break the batch.
+     */
+    static boolean isObject(String payload) {
+        if (payload == null) {
+            return false;
+        }
+        try {
+            JSONTokener tokener = new JSONTokener(payload);
+            return tokener.nextValue() instanceof JSONObject && tokener.nextClean() == 0;
+        } catch (JSONException exception) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-lane admission in front of {@link EndpointRouter}. Fresh messages from the outbox use the
+ * {@link Lane#LIVE} lane, which has its own in-flight slots and is never throttled. Replay of the
+ * {@code failed_sms} backlog uses {@link Lane#BACKLOG}: one request at a time, only while no live
+ * batch is waiting, and paced by a token bucket. A deposit that arrives during recovery therefore
+ * never queues behind thousands of replayed rows.
+ */
+public class PrioritySender {
+    public enum Lane {
+        LIVE,
+        BACKLOG
+    }
+
+    private static final int LIVE_SLOTS = 2;
+    private static final int BACKLOG_SLOTS = 1;
+    private static final double BACKLOG_ITEMS_PER_SECOND = 50;
+    private static final double BACKLOG_BURST_ITEMS = 100;
+    private static volatile PrioritySender INSTANCE;
+
+    private static final class Pending {
+        final List<String> payloads;
+        final ApiClient.BatchCallback callback;
+
+        Pending(List<String> payloads, ApiClient.BatchCallback callback) {
+            this.payloads = payloads;
+            this.callback = callback;
+        }
+    }
+
+    private final EndpointRouter router;
+    private final TokenBucket backlogBucket;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final ArrayDeque<Pending> liveQueue = new ArrayDeque<>();
+    private final ArrayDeque<Pending> backlogQueue = new ArrayDeque<>();
+    private int liveInFlight;
+    private int backlogInFlight;
+    private boolean wakeScheduled;
+
+    public static PrioritySender getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PrioritySender.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PrioritySender(EndpointRouter.getInstance(context),
+                            new TokenBucket(BACKLOG_ITEMS_PER_SECOND, BACKLOG_BURST_ITEMS));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @VisibleForTesting
+    PrioritySender(EndpointRouter router, TokenBucket backlogBucket) {
+        this.router = router;
+        this.backlogBucket = backlogBucket;
+    }
+
+    public EndpointRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * Queues the batch on its lane; the callback runs once the router has answered.
+     */
+    public void sendPayloadsAsync(Lane lane, List<String> payloads, ApiClient.BatchCallback callback) {
+        synchronized (this) {
+            (lane == Lane.LIVE ? liveQueue : backlogQueue).add(new Pending(payloads, callback));
+        }
+        pump();
+    }
+
+    private void pump() {
+        while (true) {
+            Pending next;
+            Lane lane;
+            synchronized (this) {
+                if (!liveQueue.isEmpty() && liveInFlight < LIVE_SLOTS) {
+                    next = liveQueue.poll();
+                    lane = Lane.LIVE;
+                    liveInFlight++;
+                } else if (liveQueue.isEmpty() && !backlogQueue.isEmpty() && backlogInFlight < BACKLOG_SLOTS) {
+                    int size = backlogQueue.peek().payloads.size();
+                    if (!backlogBucket.tryAcquire(size)) {
+                        scheduleWakeLocked(backlogBucket.millisUntilAvailable(size));
+                        return;
+                    }
+                    next = backlogQueue.poll();
+                    lane = Lane.BACKLOG;
+                    backlogInFlight++;
+                } else {
+                    return;
+                }
+            }
+            dispatch(lane, next);
+        }
+    }
+
+    private void dispatch(Lane lane, Pending pending) {
+        router.sendPayloadsAsync(pending.payloads, results -> {
+            synchronized (this) {
+                if (lane == Lane.LIVE) {
+                    liveInFlight--;
+                } else {
+                    backlogInFlight--;
+                }
+            }
+            try {
+                pending.callback.onResults(results);
+            } finally {
+                pump();
+            }
+        });
+    }
+
+    private void scheduleWakeLocked(long delayMillis) {
+        if (wakeScheduled) {
+            return;
+        }
+        wakeScheduled = true;
+        timer.schedule(() -> {
+            synchronized (this) {
+                wakeScheduled = false;
+            }
+            pump();
+        }, Math.max(1, delayMillis), TimeUnit.MILLISECONDS);
+    }
+}
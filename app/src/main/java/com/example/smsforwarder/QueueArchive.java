@@ -0,0 +1,98 @@
+package com.example.smsforwarder;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only, gzip-compressed record of rows evicted from the retry queue. There is one file per
+ * day, {@code failed_sms-yyyyMMdd.jsonl.gz}, holding one JSON object per line. Each append is its
+ * own gzip member, which standard gzip readers concatenate transparently. Only the newest
+ * {@code maxFiles} days are kept.
+ */
+final class QueueArchive {
+    private static final String TAG = "QueueArchive";
+    private static final String PREFIX = "failed_sms-";
+    private static final String SUFFIX = ".jsonl.gz";
+
+    private final File directory;
+    private final int maxFiles;
+
+    QueueArchive(File directory, int maxFiles) {
+        this.directory = directory;
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    /**
+     * Writes the rows and syncs the file before returning, so the caller can delete them from the
+     * database afterwards.
+     */
+    synchronized void append(List<FailedSmsEntity> rows, String reason, long now) throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = fileFor(now);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            Writer writer = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+            for (FailedSmsEntity row : rows) {
+                writer.write(toLine(row, reason, now));
+                writer.write('\n');
+            }
+            writer.flush();
+            gzip.finish();
+            out.getFD().sync();
+        }
+        prune();
+    }
+
+    File fileFor(long now) {
+        String day = new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date(now));
+        return new File(directory, PREFIX + day + SUFFIX);
+    }
+
+    private void prune() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null || files.length <= maxFiles) {
+            return;
+        }
+        // The date stamp makes name order chronological.
+        Arrays.sort(files);
+        for (int index = 0; index < files.length - maxFiles; index++) {
+            if (!files[index].delete()) {
+                Log.w(TAG, "Could not delete old archive " + files[index].getName());
+            }
+        }
+    }
+
+    private static String toLine(FailedSmsEntity row, String reason, long now) throws IOException {
+        try {
+            return new JSONObject()
+                    .put("id", row.getId())
+                    .put("created_at", row.getCreatedAt())
+                    .put("evicted_at", now)
+                    .put("reason", reason)
+                    .put("payload", row.toPayload())
+                    .toString();
+        } catch (JSONException exception) {
+            throw new IOException("Cannot encode archived row " + row.getId(), exception);
+        }
+    }
+}
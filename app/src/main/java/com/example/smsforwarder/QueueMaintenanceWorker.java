@@ -0,0 +1,60 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daily housekeeping for the local queue: applies the {@link QueueRetention} limits and then
+ * vacuums. Runs only while the device is idle with enough battery, because the first vacuum
+ * rewrites the whole database file.
+ */
+public class QueueMaintenanceWorker extends Worker {
+    private static final String TAG = "QueueMaintenanceWorker";
+    private static final String UNIQUE_WORK_NAME = "queue_maintenance";
+
+    public QueueMaintenanceWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules the periodic job; an existing schedule is kept.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                QueueMaintenanceWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        try {
+            if (!RetryManager.getInstance(context).enforceRetention(true)) {
+                Log.d(TAG, "Retry pass running; leaving retention to the retry worker.");
+            }
+            QueueRetention.getInstance(context).compact();
+        } catch (RuntimeException exception) {
+            Log.e(TAG, "Queue maintenance failed: " + exception.getMessage());
+            return Result.retry();
+        }
+        return Result.success();
+    }
+}
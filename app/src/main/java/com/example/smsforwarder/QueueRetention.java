@@ -0,0 +1,201 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@code failed_sms} bounded during long outages. Rows past the maximum age go first. After
+ * that the oldest rows are evicted until both the row cap and the byte cap hold. Evicted rows are
+ * written to a {@link QueueArchive} before they are deleted, so nothing disappears without a
+ * trace.
+ *
+ * <p>{@link #compact()} returns the freed pages to the file system. The first call switches the
+ * database to incremental auto-vacuum with one full {@code VACUUM}; later calls only run the
+ * cheap incremental pass and truncate the WAL.
+ */
+public class QueueRetention {
+    public static final class Policy {
+        public static final Policy DEFAULT = new Policy(50_000, 32L * 1024 * 1024, TimeUnit.DAYS.toMillis(14));
+
+        public final int maxRows;
+        public final long maxBytes;
+        public final long maxAgeMillis;
+
+        public Policy(int maxRows, long maxBytes, long maxAgeMillis) {
+            this.maxRows = Math.max(1, maxRows);
+            this.maxBytes = Math.max(1L, maxBytes);
+            this.maxAgeMillis = Math.max(1L, maxAgeMillis);
+        }
+    }
+
+    private static final String TAG = "QueueRetention";
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_ARCHIVE_FILES = 14;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final long ENFORCE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static volatile QueueRetention INSTANCE;
+
+    private final LocalDatabase database;
+    private final FailedSmsDao failedSmsDao;
+    private final QueueArchive archive;
+    private final Policy policy;
+    private long lastEnforcedAt;
+
+    public static QueueRetention getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (QueueRetention.class) {
+                if (INSTANCE == null) {
+                    File directory = new File(context.getApplicationContext().getFilesDir(), "archive");
+                    INSTANCE = new QueueRetention(LocalDatabase.getInstance(context),
+                            new QueueArchive(directory, MAX_ARCHIVE_FILES), Policy.DEFAULT);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @VisibleForTesting
+    QueueRetention(LocalDatabase database, QueueArchive archive, Policy policy) {
+        this.database = database;
+        this.failedSmsDao = database.failedSmsDao();
+        this.archive = archive;
+        this.policy = policy;
+    }
+
+    /**
+     * Runs {@link #enforce()} unless it already ran in the last few minutes. Callers must not run
+     * it during a retry pass; see {@link RetryManager#enforceRetention}.
+     */
+    @WorkerThread
+    public synchronized void enforceIfDue() {
+        if (System.currentTimeMillis() - lastEnforcedAt >= ENFORCE_INTERVAL_MILLIS) {
+            enforce();
+        }
+    }
+
+    /**
+     * Applies the age, row and byte limits in that order. Returns the number of rows evicted.
+     * Same restriction as {@link #enforceIfDue()}.
+     */
+    @WorkerThread
+    public synchronized int enforce() {
+        long now = System.currentTimeMillis();
+        lastEnforcedAt = now;
+        int evicted = 0;
+
+        long cutoff = now - policy.maxAgeMillis;
+        List<FailedSmsEntity> page;
+        do {
+            page = failedSmsDao.getOlderThan(cutoff, PAGE_SIZE);
+            evicted += evict(page, "expired", now);
+        } while (page.size() == PAGE_SIZE);
+
+        int excessRows = failedSmsDao.count() - policy.maxRows;
+        while (excessRows > 0) {
+            page = failedSmsDao.getOldest(Math.min(excessRows, PAGE_SIZE));
+            if (page.isEmpty()) {
+                break;
+            }
+            evicted += evict(page, "row_cap", now);
+            excessRows -= page.size();
+        }
+
+        long excessBytes = failedSmsDao.totalStoredBytes() - policy.maxBytes;
+        while (excessBytes > 0) {
+            page = failedSmsDao.getOldest(PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            List<FailedSmsEntity> victims = new ArrayList<>();
+            for (FailedSmsEntity row : page) {
+                if (excessBytes <= 0) {
+                    break;
+                }
+                victims.add(row);
+                excessBytes -= storedBytes(row);
+            }
+            evicted += evict(victims, "byte_cap", now);
+        }
+
+        if (evicted > 0) {
+            Log.w(TAG, "Evicted " + evicted + " queued rows to the archive.");
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns freed pages to the file system. Heavy on the first call; run from idle maintenance
+     * only.
+     */
+    @WorkerThread
+    public void compact() {
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        if (queryLong(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            // The mode only takes effect after a full rebuild.
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            Log.d(TAG, "Switched to incremental auto-vacuum.");
+        } else {
+            drain(db, "PRAGMA incremental_vacuum");
+        }
+        drain(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+    }
+
+    /**
+     * Archives then deletes. If the archive cannot be written the rows are still deleted: the
+     * caps exist to protect the device's storage, and a full disk is the usual reason for the
+     * failure.
+     */
+    private int evict(List<FailedSmsEntity> rows, String reason, long now) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            archive.append(rows, reason, now);
+        } catch (IOException exception) {
+            Log.e(TAG, "Archive write failed; dropping " + rows.size() + " rows: " + exception.getMessage());
+        }
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (FailedSmsEntity row : rows) {
+            ids.add(row.getId());
+        }
+        return failedSmsDao.deleteByIds(ids);
+    }
+
+    private static long storedBytes(FailedSmsEntity row) {
+        return utf8Length(row.getBody()) + utf8Length(row.getSender()) + utf8Length(row.getParsed());
+    }
+
+    private static long utf8Length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    /**
+     * Steps a pragma that does its work row by row until it is done.
+     */
+    private static void drain(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            while (cursor.moveToNext()) {
+                // Each step does part of the work.
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.smsforwarder;
+
+import android.app.Notification;
+import android.content.Context;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains {@code failed_sms} whenever the device has connectivity, independent of whether
+ * {@link SmsService} is alive. Work is unique, so only one drain is queued or running at a time.
+ */
+public class RetryDrainWorker extends Worker {
+    private static final String TAG = "RetryDrainWorker";
+    private static final String UNIQUE_WORK_NAME = "retry_drain";
+    private static final int EXPEDITE_BACKLOG_THRESHOLD = 200;
+    private static final long PASS_TIMEOUT_MILLIS = 8 * 60_000L;
+    private static final int NOTIFICATION_ID = 1002;
+
+    public RetryDrainWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Queues a drain unless one is already queued or running. Large backlogs are expedited so a
+     * phone that comes back online flushes within seconds.
+     */
+    public static void enqueue(Context context, long delayMillis, boolean expedite) {
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.KEEP, buildRequest(delayMillis, expedite));
+    }
+
+    /**
+     * Queues the next drain behind the one that is running now. Only used from inside
+     * {@link #doWork()}, where a KEEP request would be dropped.
+     */
+    private static void enqueueFollowUp(Context context, long delayMillis, boolean expedite) {
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE,
+                        buildRequest(delayMillis, expedite));
+    }
+
+    /**
+     * Expedites the drain when the backlog has crossed the threshold. Reads the table, so callers
+     * must be off the main thread.
+     */
+    public static void enqueueForBacklog(Context context, int backlogSize) {
+        enqueue(context, 0, backlogSize >= EXPEDITE_BACKLOG_THRESHOLD);
+    }
+
+    private static OneTimeWorkRequest buildRequest(long delayMillis, boolean expedite) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(RetryDrainWorker.class)
+                .setConstraints(constraints);
+        if (delayMillis > 0) {
+            // Expedited work cannot carry an initial delay.
+            builder.setInitialDelay(delayMillis, TimeUnit.MILLISECONDS);
+        } else if (expedite) {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        }
+        return builder.build();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        RetryManager retryManager = RetryManager.getInstance(context);
+        long nextDelay;
+        try {
+            nextDelay = retryManager.drainBlocking(PASS_TIMEOUT_MILLIS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+        retryManager.enforceRetention(false);
+        int backlog = retryManager.getBacklogSize();
+        Metrics.setBacklogDepth(backlog);
+        retryManager.keepConnectionWarm(backlog > 0);
+        if (nextDelay != RetryManager.NO_PENDING_PASS) {
+            Log.d(TAG, "Backlog of " + backlog + " remains; next drain in " + nextDelay + "ms.");
+            enqueueFollowUp(context, nextDelay, false);
+        } else if (backlog > 0) {
+            // Rows that arrived after the pass read its last page.
+            enqueueFollowUp(context, 0, backlog >= EXPEDITE_BACKLOG_THRESHOLD);
+        }
+        return Result.success();
+    }
+
+    /**
+     * Required for expedited work on API levels below 31, where it runs as a foreground service.
+     */
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        Context context = getApplicationContext();
+        SmsService.createNotificationChannel(context);
+        Notification notification = new NotificationCompat.Builder(context, SmsService.CHANNEL_ID)
+                .setContentTitle(context.getString(R.string.app_name))
+                .setContentText(context.getString(R.string.retry_notification_message))
+                .setSmallIcon(android.R.drawable.ic_dialog_email)
+                .setOngoing(true)
+                .build();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        }
+        return new ForegroundInfo(NOTIFICATION_ID, notification);
+    }
+}
@@ -1,121 +1,283 @@
 package com.example.smsforwarder;
 
+import android.content.Context;
 import android.util.Log;
 
-import org.json.JSONArray;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Coordinates retry logic for failed SMS payload submissions.
+ *
+ * <p>At most one retry pass runs per process. A pass walks {@code failed_sms} in id order, one
+ * bounded chunk per request, and only fetches the next chunk once the previous request has
+ * finished, so a row is never part of two requests at once.
+ *
+ * <p>Passes are run by {@link RetryDrainWorker} rather than by incoming SMS. After a failed pass
+ * the next one is delayed by the backoff schedule of the endpoint that recovers first, and while
+ * every endpoint's circuit breaker is open no pass is attempted at all.
  */
 public class RetryManager {
+    public static final long NO_PENDING_PASS = -1L;
+
     private static final String TAG = "RetryManager";
+    private static final int RETRY_CHUNK_SIZE = 100;
+    private static final long MIN_FAILURE_DELAY_MILLIS = 2_000L;
+    private static volatile RetryManager INSTANCE;
 
+    private final Context appContext;
+    private final LocalDatabase database;
     private final FailedSmsDao failedSmsDao;
-    private final ApiClient apiClient;
+    private final DeadLetterDao deadLetterDao;
+    private final PrioritySender sender;
+    private final EndpointRouter router;
+    private final OutboxManager outboxManager;
+    private final ExecutorService retryExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean retryInFlight = new AtomicBoolean(false);
+    private volatile CountDownLatch passDone;
+    private volatile boolean passFailed;
+    private boolean passHadTransientFailures;
+
+    public static RetryManager getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (RetryManager.class) {
+                if (INSTANCE == null) {
+                    LocalDatabase database = LocalDatabase.getInstance(context);
+                    INSTANCE = new RetryManager(
+                            context.getApplicationContext(),
+                            database,
+                            PrioritySender.getInstance(context),
+                            OutboxManager.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
 
-    public RetryManager(FailedSmsDao failedSmsDao, ApiClient apiClient) {
-        this.failedSmsDao = failedSmsDao;
-        this.apiClient = apiClient;
+    @VisibleForTesting
+    RetryManager(Context appContext, LocalDatabase database, PrioritySender sender, OutboxManager outboxManager) {
+        this.appContext = appContext;
+        this.database = database;
+        this.failedSmsDao = database.failedSmsDao();
+        this.deadLetterDao = database.deadLetterDao();
+        this.sender = sender;
+        this.router = sender.getRouter();
+        this.outboxManager = outboxManager;
     }
 
+    /**
+     * Asks WorkManager for a retry pass once the device is online. Requests made while a drain is
+     * already queued or running are dropped.
+     */
     public void retryFailedMessages() {
-        List<FailedSmsEntity> failed = failedSmsDao.getAllFailed();
-        if (failed.isEmpty()) {
-            return;
+        RetryDrainWorker.enqueue(appContext, 0, false);
+    }
+
+    @WorkerThread
+    public int getBacklogSize() {
+        return failedSmsDao.count();
+    }
+
+    /**
+     * Holds the connection to the endpoint open between passes while a backlog is waiting, so the
+     * next pass skips the handshake.
+     */
+    public void keepConnectionWarm(boolean hasBacklog) {
+        router.setKeepAlive(hasBacklog);
+    }
+
+    /**
+     * Runs one retry pass and blocks until it finishes or {@code timeoutMillis} elapses. Returns the
+     * delay before the next pass should run, or {@link #NO_PENDING_PASS} if the pass completed.
+     */
+    @WorkerThread
+    public long drainBlocking(long timeoutMillis) throws InterruptedException {
+        long wait = router.millisUntilAvailable();
+        if (wait > 0) {
+            return wait;
+        }
+        if (!retryInFlight.compareAndSet(false, true)) {
+            return MIN_FAILURE_DELAY_MILLIS;
         }
-        JSONArray batchedPayloads = new JSONArray();
-        List<FailedSmsEntity> processedEntities = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        passDone = done;
+        passFailed = false;
+        passHadTransientFailures = false;
+        retryExecutor.execute(() -> retryChunkAfter(0L));
+        if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            Log.w(TAG, "Retry pass still running after " + timeoutMillis + "ms.");
+            return MIN_FAILURE_DELAY_MILLIS;
+        }
+        if (passFailed) {
+            return Math.max(MIN_FAILURE_DELAY_MILLIS, router.nextBackoffMillis());
+        }
+        return NO_PENDING_PASS;
+    }
 
-        for (FailedSmsEntity entity : failed) {
-            try {
-                appendPayload(entity.getPayload(), batchedPayloads);
-                processedEntities.add(entity);
-            } catch (JSONException exception) {
-                Log.e(TAG, "Corrupt cached payload; dropping id=" + entity.getId());
-                failedSmsDao.delete(entity);
+    /**
+     * Applies the {@link QueueRetention} caps while holding the pass lock, so eviction never
+     * deletes rows of a chunk that is still being sent. Does nothing and returns false while a
+     * pass is running.
+     *
+     * @param force enforce now rather than only when the last run is old enough
+     */
+    @WorkerThread
+    public boolean enforceRetention(boolean force) {
+        if (!retryInFlight.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            QueueRetention retention = QueueRetention.getInstance(appContext);
+            if (force) {
+                retention.enforce();
+            } else {
+                retention.enforceIfDue();
             }
+            return true;
+        } finally {
+            retryInFlight.set(false);
+        }
+    }
+
+    private void finishPass(boolean failed) {
+        passFailed = failed;
+        retryInFlight.set(false);
+        CountDownLatch done = passDone;
+        if (done != null) {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Any exception ends the pass as failed, so the pass lock is always released and the next
+     * pass (and retention) can run.
+     */
+    private void retryChunkAfter(long afterId) {
+        try {
+            sendChunkAfter(afterId);
+        } catch (RuntimeException exception) {
+            Log.e(TAG, "Retry pass aborted: " + exception.getMessage());
+            finishPass(true);
         }
+    }
 
-        if (batchedPayloads.length() == 0) {
+    private void sendChunkAfter(long afterId) {
+        List<FailedSmsEntity> chunk = failedSmsDao.getFailedAfter(afterId, RETRY_CHUNK_SIZE);
+        if (chunk.isEmpty()) {
+            finishPass(false);
             return;
         }
+        long lastId = chunk.get(chunk.size() - 1).getId();
+        boolean hasMore = chunk.size() == RETRY_CHUNK_SIZE;
 
-        apiClient.sendEncryptedListAsync(batchedPayloads, new ApiClient.SendCallback() {
-            @Override
-            public void onSuccess() {
-                for (FailedSmsEntity entity : processedEntities) {
-                    failedSmsDao.delete(entity);
-                }
+        List<String> batchedPayloads = new ArrayList<>(chunk.size());
+        for (FailedSmsEntity entity : chunk) {
+            batchedPayloads.add(entity.toPayload());
+        }
+
+        Metrics.RETRIED.add(batchedPayloads.size());
+        sender.sendPayloadsAsync(PrioritySender.Lane.BACKLOG, batchedPayloads, results -> retryExecutor.execute(() -> {
+            try {
+                onChunkResults(chunk, batchedPayloads, results, hasMore, lastId);
+            } catch (RuntimeException exception) {
+                Log.e(TAG, "Could not settle retry chunk: " + exception.getMessage());
+                finishPass(true);
             }
+        }));
+    }
 
-            @Override
-            public void onFailure(String plainJson, Exception exception) {
-                if (exception != null) {
-                    Log.w(TAG, "Batch retry still failing: " + exception.getMessage());
-                } else {
-                    Log.w(TAG, "Batch retry still failing.");
-                }
+    private void onChunkResults(List<FailedSmsEntity> chunk, List<String> batchedPayloads,
+                                List<DeliveryResult> results, boolean hasMore, long lastId) {
+        List<Long> settledIds = new ArrayList<>();
+        List<DeadLetterEntity> deadLetters = new ArrayList<>();
+        int acked = 0;
+        int transientFailures = 0;
+        long now = System.currentTimeMillis();
+        for (int index = 0; index < chunk.size(); index++) {
+            FailedSmsEntity entity = chunk.get(index);
+            DeliveryResult outcome = results.get(index);
+            if (outcome.status == DeliveryResult.Status.ACKED) {
+                settledIds.add(entity.getId());
+                acked++;
+            } else if (outcome.status == DeliveryResult.Status.REJECTED) {
+                Log.w(TAG, "Retry row rejected; dead-lettering id=" + entity.getId() + ": " + outcome.reason);
+                settledIds.add(entity.getId());
+                deadLetters.add(new DeadLetterEntity(batchedPayloads.get(index), outcome.reason, entity.getCreatedAt(), now));
+            } else {
+                transientFailures++;
             }
-        });
+        }
+        settle(settledIds, deadLetters);
+        Metrics.SENT.add(acked);
+        Metrics.FAILED.add(chunk.size() - acked);
+        if (transientFailures > 0) {
+            Log.w(TAG, "Batch retry still failing for " + transientFailures + " rows.");
+            passHadTransientFailures = true;
+        }
+        if (transientFailures > 0 && acked == 0) {
+            finishPass(true);
+        } else {
+            continueOrFinish(hasMore, lastId);
+        }
     }
 
-    public void processBodyJson(JSONObject bodyJson) {
-        if (bodyJson == null) {
+    /**
+     * Removes every acknowledged or rejected row of a chunk and files the rejected ones as dead
+     * letters, all in one transaction.
+     */
+    private void settle(List<Long> settledIds, List<DeadLetterEntity> deadLetters) {
+        if (settledIds.isEmpty()) {
             return;
         }
-        apiClient.sendEncryptedAsync(bodyJson, new ApiClient.SendCallback() {
-            @Override
-            public void onSuccess() {
-                // no-op
-            }
-
-            @Override
-            public void onFailure(String plainJson, Exception exception) {
-                if (plainJson != null) {
-                    cacheFailedPayload(plainJson);
-                }
-                if (exception != null) {
-                    Log.e(TAG, "Encrypted send failure: " + exception.getMessage());
-                }
+        database.runInTransaction(() -> {
+            if (!deadLetters.isEmpty()) {
+                deadLetterDao.insertAll(deadLetters);
             }
+            failedSmsDao.deleteByIds(settledIds);
         });
     }
 
-    private void cacheFailedPayload(String payload) {
-        if (payload == null) {
-            return;
+    private void continueOrFinish(boolean hasMore, long lastId) {
+        if (hasMore) {
+            retryChunkAfter(lastId);
+        } else {
+            finishPass(passHadTransientFailures);
         }
-        FailedSmsEntity entity = new FailedSmsEntity(payload, System.currentTimeMillis());
-        failedSmsDao.insert(entity);
     }
 
-    private void appendPayload(String payload, JSONArray accumulator) throws JSONException {
-        if (payload == null) {
-            throw new JSONException("Payload is null");
+    /**
+     * Commits the payload to the outbox before anything touches the network, then wakes the drain
+     * loop. Failed sends end up in {@code failed_sms} via the outbox.
+     *
+     * @return false if nothing was stored because the message id was already recorded
+     */
+    public boolean processBodyJson(JSONObject bodyJson) {
+        if (bodyJson == null) {
+            return false;
         }
-        String trimmed = payload.trim();
-        if (trimmed.isEmpty()) {
-            throw new JSONException("Payload is empty");
+        long insertedAt = System.currentTimeMillis();
+        try {
+            bodyJson.put("inserted_at", insertedAt);
+        } catch (JSONException exception) {
+            Log.e(TAG, "Failed to stamp inserted_at: " + exception.getMessage());
         }
-        if (trimmed.startsWith("[")) {
-            JSONArray array = new JSONArray(trimmed);
-            if (array.length() == 0) {
-                throw new JSONException("Empty payload array");
-            }
-            for (int index = 0; index < array.length(); index++) {
-                JSONObject element = array.optJSONObject(index);
-                if (element == null) {
-                    throw new JSONException("Payload array element is not an object");
-                }
-                accumulator.put(element);
-            }
-            return;
+        String messageId = bodyJson.optString("message_id", null);
+        if (outboxManager.enqueue(bodyJson.toString(), insertedAt, messageId) == -1L) {
+            Log.d(TAG, "Duplicate SMS not stored: " + messageId);
+            return false;
         }
-        accumulator.put(new JSONObject(trimmed));
+        outboxManager.requestDrain();
+        return true;
     }
 }
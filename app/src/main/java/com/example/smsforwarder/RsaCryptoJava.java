@@ -13,12 +13,17 @@ import javax.crypto.Cipher;
  */
 public final class RsaCryptoJava {
     private static final String TRANSFORMATION = "RSA/ECB/PKCS1Padding";
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
 
     private RsaCryptoJava() {
     }
 
     public static String encrypt(String plainText, PublicKey publicKey) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        Cipher cipher = CIPHER.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            CIPHER.set(cipher);
+        }
         cipher.init(Cipher.ENCRYPT_MODE, publicKey);
         byte[] encrypted = cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
         return Base64.encodeToString(encrypted, Base64.NO_WRAP);
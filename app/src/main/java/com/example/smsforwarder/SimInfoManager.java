@@ -4,6 +4,8 @@ import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
@@ -13,12 +15,21 @@ import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Caches SIM slot metadata to associate subscription identifiers with receiver numbers.
+ *
+ * <p>Readers never lock: they load the current immutable {@link Snapshot} from an
+ * {@link AtomicReference}, and a refresh builds a new snapshot and swaps it in.
  */
 public class SimInfoManager {
     public static final class SimEntry {
@@ -37,29 +48,83 @@ public class SimInfoManager {
         }
     }
 
-    private final Map<Integer, SimEntry> slotEntries = new HashMap<>();
-    private final Map<Integer, Integer> subscriptionToSlot = new HashMap<>();
-    private Context appContext;
+    /**
+     * Immutable view of the active subscriptions. Line numbers resolved through the system are
+     * memoized per snapshot, so they are dropped together with it when the SIM set changes.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(
+                Collections.<Integer, SimEntry>emptyMap(), Collections.<Integer, Integer>emptyMap());
 
-    public synchronized void refresh(Context context) {
-        appContext = context != null ? context.getApplicationContext() : null;
-        slotEntries.clear();
-        subscriptionToSlot.clear();
+        final Map<Integer, SimEntry> slotEntries;
+        final Map<Integer, Integer> subscriptionToSlot;
+        final ConcurrentHashMap<Integer, String> resolvedNumbers = new ConcurrentHashMap<>();
 
-        SubscriptionManager subscriptionManager = context.getSystemService(SubscriptionManager.class);
+        Snapshot(Map<Integer, SimEntry> slotEntries, Map<Integer, Integer> subscriptionToSlot) {
+            this.slotEntries = slotEntries;
+            this.subscriptionToSlot = subscriptionToSlot;
+        }
+    }
+
+    // Memo value for "the system has no number for this slot".
+    private static final String NO_NUMBER = "";
+    private static volatile SimInfoManager INSTANCE;
+
+    private final Context appContext;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean listening = new AtomicBoolean(false);
+
+    /**
+     * Process-wide cache. Built once, then rebuilt only when the system reports a subscription
+     * change, so reading it on the per-SMS path costs no IPC.
+     */
+    public static SimInfoManager getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SimInfoManager.class) {
+                if (INSTANCE == null) {
+                    SimInfoManager manager = new SimInfoManager(context.getApplicationContext());
+                    manager.refresh();
+                    manager.startListening();
+                    INSTANCE = manager;
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private SimInfoManager(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    /**
+     * Rebuilds the snapshot from {@link SubscriptionManager} and swaps it in. Called by the
+     * subscription listener, and by callers that know the inputs changed (e.g. a permission grant).
+     */
+    public void refresh() {
+        snapshot.set(buildSnapshot());
+        if (hasPhonePermissions(appContext)) {
+            startListening();
+        }
+    }
+
+    private Snapshot buildSnapshot() {
+        SubscriptionManager subscriptionManager = appContext.getSystemService(SubscriptionManager.class);
         if (subscriptionManager == null) {
-            return;
+            return Snapshot.EMPTY;
         }
 
-        if (!hasPhonePermissions(context)) {
-            return;
+        if (!hasPhonePermissions(appContext)) {
+            return Snapshot.EMPTY;
         }
 
         List<SubscriptionInfo> subscriptions = subscriptionManager.getActiveSubscriptionInfoList();
         if (subscriptions == null) {
-            return;
+            return Snapshot.EMPTY;
         }
 
+        Map<Integer, SimEntry> slotEntries = new HashMap<>();
+        Map<Integer, Integer> subscriptionToSlot = new HashMap<>();
         for (SubscriptionInfo info : subscriptions) {
             if (info == null) {
                 continue;
@@ -73,70 +138,105 @@ public class SimInfoManager {
             CharSequence displayName = info.getDisplayName();
             CharSequence carrierSequence = displayName != null ? displayName : info.getCarrierName();
             String carrierName = carrierSequence != null ? carrierSequence.toString() : "";
-            String iccid;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                iccid = info.getIccId();
-            } else {
-                iccid = info.getIccId();
-            }
+            String iccid = info.getIccId();
             SimEntry entry = new SimEntry(slotIndex, subscriptionId, number, carrierName, iccid);
             slotEntries.put(slotIndex, entry);
             subscriptionToSlot.put(subscriptionId, slotIndex);
         }
+        return new Snapshot(Collections.unmodifiableMap(slotEntries), Collections.unmodifiableMap(subscriptionToSlot));
+    }
+
+    /**
+     * Registering needs READ_PHONE_STATE, so this is retried on every refresh until it sticks.
+     *
+     * <p>Callers may have no looper (the receiver handoff thread, the heartbeat scheduler). Before
+     * R the listener's constructor builds a Handler on the current thread's looper and throws
+     * without one, so the listener is created and registered on the main looper.
+     */
+    private void startListening() {
+        if (!hasPhonePermissions(appContext) || !listening.compareAndSet(false, true)) {
+            return;
+        }
+        SubscriptionManager subscriptionManager = appContext.getSystemService(SubscriptionManager.class);
+        if (subscriptionManager == null) {
+            listening.set(false);
+            return;
+        }
+        new Handler(Looper.getMainLooper()).post(() -> {
+            SubscriptionManager.OnSubscriptionsChangedListener listener =
+                    new SubscriptionManager.OnSubscriptionsChangedListener() {
+                        @Override
+                        public void onSubscriptionsChanged() {
+                            refreshExecutor.execute(SimInfoManager.this::refresh);
+                        }
+                    };
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                subscriptionManager.addOnSubscriptionsChangedListener(refreshExecutor, listener);
+            } else {
+                // Older releases deliver callbacks on the registering thread's looper.
+                subscriptionManager.addOnSubscriptionsChangedListener(listener);
+            }
+        });
     }
 
-    public synchronized Map<Integer, String> snapshotSlotToNumberMap() {
+    public Map<Integer, String> snapshotSlotToNumberMap() {
         Map<Integer, String> map = new HashMap<>();
-        for (Map.Entry<Integer, SimEntry> entry : slotEntries.entrySet()) {
+        for (Map.Entry<Integer, SimEntry> entry : snapshot.get().slotEntries.entrySet()) {
             map.put(entry.getKey(), entry.getValue().phoneNumber);
         }
         return map;
     }
 
-    public synchronized List<SimEntry> snapshotEntries() {
-        return new ArrayList<>(slotEntries.values());
+    public List<SimEntry> snapshotEntries() {
+        return new ArrayList<>(snapshot.get().slotEntries.values());
     }
 
     @Nullable
-    public synchronized String getNumberForSubscription(int subscriptionId) {
+    public String getNumberForSubscription(int subscriptionId) {
         SimEntry entry = getEntryForSubscription(subscriptionId);
         return entry != null ? entry.phoneNumber : null;
     }
 
     @Nullable
-    public synchronized String getIccidForSubscription(int subscriptionId) {
+    public String getIccidForSubscription(int subscriptionId) {
         SimEntry entry = getEntryForSubscription(subscriptionId);
         return entry != null ? entry.iccid : null;
     }
 
     @Nullable
-    public synchronized SimEntry getEntryForSubscription(int subscriptionId) {
-        Integer slot = subscriptionToSlot.get(subscriptionId);
+    public SimEntry getEntryForSubscription(int subscriptionId) {
+        Snapshot current = snapshot.get();
+        Integer slot = current.subscriptionToSlot.get(subscriptionId);
         if (slot == null) {
             return null;
         }
-        return slotEntries.get(slot);
+        return current.slotEntries.get(slot);
     }
 
-    public synchronized String getReceiverNumber(int simSlotIndex) {
+    public String getReceiverNumber(int simSlotIndex) {
+        Snapshot current = snapshot.get();
         String number = null;
-        SimEntry entry = slotEntries.get(simSlotIndex);
+        SimEntry entry = current.slotEntries.get(simSlotIndex);
         if (entry != null && !TextUtils.isEmpty(entry.phoneNumber)) {
             number = entry.phoneNumber;
         }
         if (TextUtils.isEmpty(number)) {
-            number = resolveNumberFromSystem(simSlotIndex);
+            number = current.resolvedNumbers.get(simSlotIndex);
+            if (number == null) {
+                number = resolveNumberFromSystem(simSlotIndex, current);
+                if (number == null) {
+                    number = NO_NUMBER;
+                }
+                current.resolvedNumbers.put(simSlotIndex, number);
+            }
         }
-        if (TextUtils.isEmpty(number) && appContext != null) {
+        if (TextUtils.isEmpty(number)) {
             number = AppPreferences.getFallbackReceiverNumber(appContext);
         }
         return number != null ? number.trim() : null;
     }
 
-    private String resolveNumberFromSystem(int simSlotIndex) {
-        if (appContext == null) {
-            return null;
-        }
+    private String resolveNumberFromSystem(int simSlotIndex, Snapshot current) {
         if (!hasPhonePermissions(appContext)) {
             return null;
         }
@@ -178,11 +278,11 @@ public class SimInfoManager {
                 }
             }
         }
-        if (info == null && entryHasSubscription(simSlotIndex) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+        SimEntry entry = current.slotEntries.get(simSlotIndex);
+        if (info == null && entry != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             TelephonyManager telephonyManager = appContext.getSystemService(TelephonyManager.class);
             if (telephonyManager != null) {
-                int subscriptionId = slotEntries.get(simSlotIndex).subscriptionId;
-                TelephonyManager perSubscription = telephonyManager.createForSubscriptionId(subscriptionId);
+                TelephonyManager perSubscription = telephonyManager.createForSubscriptionId(entry.subscriptionId);
                 if (perSubscription != null) {
                     String lineNumber = perSubscription.getLine1Number();
                     if (!TextUtils.isEmpty(lineNumber)) {
@@ -194,10 +294,6 @@ public class SimInfoManager {
         return null;
     }
 
-    private boolean entryHasSubscription(int simSlotIndex) {
-        return slotEntries.containsKey(simSlotIndex) && slotEntries.get(simSlotIndex) != null;
-    }
-
     private boolean hasPhonePermissions(Context context) {
         int readPhoneState = ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE);
         int readPhoneNumbers = ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_NUMBERS);
@@ -0,0 +1,103 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded local index of recently forwarded message ids. An in-memory bloom filter answers the
+ * common "never seen" case without touching disk; only possible repeats are checked against the
+ * {@code sms_dedup} table, which is the source of truth and forgets ids after {@link #TTL_MILLIS}.
+ *
+ * <p>This class only reads. A dedup row is written by {@link OutboxManager#enqueue} in the same
+ * transaction as the outbox row, so an SMS that is dropped or lost before it is persisted is
+ * never treated as a duplicate when it is delivered again.
+ */
+public class SmsDeduplicator {
+    static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(48);
+
+    private static final String TAG = "SmsDeduplicator";
+    private static final int BLOOM_CAPACITY = 20_000;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    private static volatile SmsDeduplicator INSTANCE;
+
+    private final DedupDao dedupDao;
+    private BloomFilter bloomFilter;
+    private int bloomCapacity;
+
+    public static SmsDeduplicator getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SmsDeduplicator.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SmsDeduplicator(LocalDatabase.getInstance(context).dedupDao());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @VisibleForTesting
+    SmsDeduplicator(DedupDao dedupDao) {
+        this.dedupDao = dedupDao;
+    }
+
+    /**
+     * Whether the id was persisted within the TTL. Marks nothing.
+     */
+    @WorkerThread
+    public boolean isDuplicate(String messageId) {
+        synchronized (this) {
+            ensureFilter();
+            if (!bloomFilter.mightContain(messageId)) {
+                return false;
+            }
+        }
+        try {
+            return dedupDao.countSince(messageId, System.currentTimeMillis() - TTL_MILLIS) > 0;
+        } catch (RuntimeException exception) {
+            Log.e(TAG, "Dedup lookup failed: " + exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Adds an id whose dedup row has just been committed to the in-memory filter.
+     */
+    @WorkerThread
+    public synchronized void recordPersisted(String messageId) {
+        ensureFilter();
+        bloomFilter.put(messageId);
+    }
+
+    private void ensureFilter() {
+        if (bloomFilter == null || bloomFilter.getInsertions() >= bloomCapacity) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Expires old ids and reloads the filter from what is left, which keeps both bounded.
+     */
+    private void rebuild() {
+        try {
+            long cutoff = System.currentTimeMillis() - TTL_MILLIS;
+            dedupDao.deleteOlderThan(cutoff);
+            List<String> ids = dedupDao.getIdsSince(cutoff);
+            bloomCapacity = Math.max(BLOOM_CAPACITY, ids.size() * 2);
+            BloomFilter rebuilt = new BloomFilter(bloomCapacity, BLOOM_FALSE_POSITIVE_RATE);
+            for (String id : ids) {
+                rebuilt.put(id);
+            }
+            bloomFilter = rebuilt;
+        } catch (RuntimeException exception) {
+            Log.e(TAG, "Could not load dedup index: " + exception.getMessage());
+            bloomCapacity = BLOOM_CAPACITY;
+            bloomFilter = new BloomFilter(bloomCapacity, BLOOM_FALSE_POSITIVE_RATE);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Decides which SMS are worth forwarding, before any hashing, database or network work happens.
+ *
+ * <p>Rules are {@code {"allow_senders", "deny_senders", "allow_keywords", "deny_keywords"}}, each
+ * a list of case-insensitive substrings matched against the sender or the body. A deny match
+ * always drops the message. If any allow list is non-empty, the message must also match one of
+ * them. With no rules everything is forwarded.
+ *
+ * <p>Rules come from preferences and can be replaced from a config URL. Each rule set is compiled
+ * into {@link KeywordMatcher}s once and swapped in whole, so matching never locks.
+ */
+public class SmsFilter {
+    private static final String TAG = "SmsFilter";
+    private static volatile SmsFilter INSTANCE;
+
+    static final class Rules {
+        static final Rules ALLOW_ALL = new Rules(KeywordMatcher.EMPTY, KeywordMatcher.EMPTY,
+                KeywordMatcher.EMPTY, KeywordMatcher.EMPTY);
+
+        final KeywordMatcher allowSenders;
+        final KeywordMatcher denySenders;
+        final KeywordMatcher allowKeywords;
+        final KeywordMatcher denyKeywords;
+
+        Rules(KeywordMatcher allowSenders, KeywordMatcher denySenders,
+              KeywordMatcher allowKeywords, KeywordMatcher denyKeywords) {
+            this.allowSenders = allowSenders;
+            this.denySenders = denySenders;
+            this.allowKeywords = allowKeywords;
+            this.denyKeywords = denyKeywords;
+        }
+
+        static Rules parse(String json) throws JSONException {
+            if (json == null || json.trim().isEmpty()) {
+                return ALLOW_ALL;
+            }
+            JSONObject config = new JSONObject(json);
+            return new Rules(
+                    KeywordMatcher.compile(strings(config.optJSONArray("allow_senders"))),
+                    KeywordMatcher.compile(strings(config.optJSONArray("deny_senders"))),
+                    KeywordMatcher.compile(strings(config.optJSONArray("allow_keywords"))),
+                    KeywordMatcher.compile(strings(config.optJSONArray("deny_keywords"))));
+        }
+
+        boolean accepts(String sender, String body) {
+            if (denySenders.matchesAny(sender) || denyKeywords.matchesAny(body)) {
+                return false;
+            }
+            if (allowSenders.isEmpty() && allowKeywords.isEmpty()) {
+                return true;
+            }
+            return allowSenders.matchesAny(sender) || allowKeywords.matchesAny(body);
+        }
+
+        private static List<String> strings(JSONArray array) {
+            List<String> values = new ArrayList<>();
+            if (array == null) {
+                return values;
+            }
+            for (int index = 0; index < array.length(); index++) {
+                String value = array.optString(index, null);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        }
+    }
+
+    private final Context appContext;
+    private final AtomicReference<Rules> rules = new AtomicReference<>(Rules.ALLOW_ALL);
+
+    public static SmsFilter getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SmsFilter.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SmsFilter(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private SmsFilter(Context appContext) {
+        this.appContext = appContext;
+        apply(AppPreferences.getFilterRules(appContext));
+    }
+
+    public boolean accepts(String sender, String body) {
+        return rules.get().accepts(sender, body);
+    }
+
+    /**
+     * Compiles and installs a new rule set and saves it for the next start. An invalid rule set
+     * is ignored and the current one stays in place.
+     */
+    public boolean update(String json) {
+        if (!apply(json)) {
+            return false;
+        }
+        AppPreferences.saveFilterRules(appContext, json);
+        return true;
+    }
+
+    /**
+     * Fetches rules from the configured URL, if there is one, and installs them when they arrive.
+     */
+    public void refreshFromRemote() {
+        String url = AppPreferences.getFilterConfigUrl(appContext);
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+        Request request;
+        try {
+            request = new Request.Builder().url(url).get().build();
+        } catch (IllegalArgumentException exception) {
+            Log.e(TAG, "Invalid filter config URL: " + url);
+            return;
+        }
+        HttpClientProvider.get().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "Filter config fetch failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (response.isSuccessful() && response.body() != null) {
+                        update(response.body().string());
+                    } else {
+                        Log.w(TAG, "Filter config fetch failed: code=" + response.code());
+                    }
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    private boolean apply(String json) {
+        try {
+            rules.set(Rules.parse(json));
+            return true;
+        } catch (JSONException exception) {
+            Log.e(TAG, "Invalid filter rules: " + exception.getMessage());
+            return false;
+        }
+    }
+}
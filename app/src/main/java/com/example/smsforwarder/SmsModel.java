@@ -1,21 +1,32 @@
 package com.example.smsforwarder;
 
-import java.util.Locale;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import android.telephony.SubscriptionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Immutable model representing a processed SMS message.
  */
 public class SmsModel {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     private final String sender;
     private final String content;
     private final long timestamp;
+    private final int subscriptionId;
+    private String messageId;
 
     public SmsModel(String sender, String content, long timestamp) {
+        this(sender, content, timestamp, SubscriptionManager.INVALID_SUBSCRIPTION_ID);
+    }
+
+    public SmsModel(String sender, String content, long timestamp, int subscriptionId) {
         this.sender = sender;
         this.content = content;
         this.timestamp = timestamp;
+        this.subscriptionId = subscriptionId;
     }
 
     public String getSender() {
@@ -30,15 +41,34 @@ public class SmsModel {
         return timestamp;
     }
 
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
     /**
-     * Ensures sender text matches the required regex filter.
+     * Stable idempotency key derived from the message content: SHA-256 over sender, body,
+     * subscription id and timestamp. A redelivered or retried copy of the same SMS yields the
+     * same id, so both this device and the server can drop it.
      */
-    public boolean matchesFilter(String brandNameFilter) {
-        return true;
-        
-//        if (sender == null) {
-//            return false;
-//        }
-//        return brandNameFilter.contains(sender);
+    public synchronized String getMessageId() {
+        if (messageId == null) {
+            messageId = computeMessageId();
+        }
+        return messageId;
+    }
+
+    private String computeMessageId() {
+        String key = sender + '\u0000' + content + '\u0000' + subscriptionId + '\u0000' + timestamp;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[digest.length * 2];
+            for (int index = 0; index < digest.length; index++) {
+                hex[index * 2] = HEX[(digest[index] >> 4) & 0x0f];
+                hex[index * 2 + 1] = HEX[digest[index] & 0x0f];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 unavailable", exception);
+        }
     }
 }
@@ -0,0 +1,271 @@
+package com.example.smsforwarder;
+
+import android.content.Context;
+import android.telephony.SubscriptionManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged processing for incoming SMS: enrich (filter, dedup, SIM lookup, parse, JSON build), then
+ * persist to the outbox. Sending is the outbox drain loop, which batches across SIMs.
+ *
+ * <p>Work is partitioned by subscription id. Each SIM gets its own lane with one thread per stage,
+ * so messages from one SIM are handled in arrival order while the SIMs run in parallel. Every
+ * stage queue is bounded; a full queue blocks the stage feeding it, so pressure propagates back
+ * to the caller instead of growing memory.
+ */
+public class SmsPipeline {
+    public interface Listener {
+        /** Called on the stage thread once the message has been persisted or dropped. */
+        void onMessageDone();
+    }
+
+    public interface DepthListener {
+        void onDepthChanged(int depth, boolean saturated);
+    }
+
+    private static final String TAG = "SmsPipeline";
+    private static final int STAGE_QUEUE_CAPACITY = 64;
+    private static final int SATURATION_THRESHOLD = STAGE_QUEUE_CAPACITY * 3 / 4;
+
+    /**
+     * Blocks the submitting thread until the stage has room, rather than dropping the message.
+     */
+    private static final RejectedExecutionHandler BLOCK_WHEN_FULL = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Pipeline stage shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(exception);
+        }
+    };
+
+    private static final class Lane {
+        final ThreadPoolExecutor enrichStage = newStage();
+        final ThreadPoolExecutor persistStage = newStage();
+
+        boolean isSaturated() {
+            return enrichStage.getQueue().size() >= SATURATION_THRESHOLD
+                    || persistStage.getQueue().size() >= SATURATION_THRESHOLD;
+        }
+
+        void shutdown() {
+            enrichStage.shutdown();
+            persistStage.shutdown();
+        }
+    }
+
+    private static volatile SmsPipeline INSTANCE;
+
+    private final ApiClient apiClient;
+    private final RetryManager retryManager;
+    private final SmsFilter smsFilter;
+    private final TransactionParser transactionParser;
+    private final SmsDeduplicator deduplicator;
+    private final SimInfoManager simInfoManager;
+    private final ConcurrentHashMap<Integer, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile DepthListener depthListener;
+
+    /**
+     * The pipeline lives as long as the process, so receivers can hand messages to it directly
+     * without starting a service for each one.
+     */
+    public static SmsPipeline getInstance(Context context) {
+        if (INSTANCE != null) {
+            return INSTANCE;
+        }
+        SmsPipeline pipeline;
+        boolean created = false;
+        synchronized (SmsPipeline.class) {
+            pipeline = INSTANCE;
+            if (pipeline == null) {
+                pipeline = new SmsPipeline(
+                        new ApiClient(),
+                        RetryManager.getInstance(context),
+                        SmsFilter.getInstance(context),
+                        TransactionParser.getDefault(),
+                        SmsDeduplicator.getInstance(context),
+                        SimInfoManager.getInstance(context));
+                INSTANCE = pipeline;
+                created = true;
+            }
+        }
+        // Only the caller that built the pipeline starts the background work, and outside the
+        // lock, so other callers never wait on WorkManager, the network or the filter fetch.
+        if (created) {
+            QueueMaintenanceWorker.schedule(context);
+            HeartbeatReporter.getInstance(context).start();
+            EndpointRouter.getInstance(context).prewarm();
+            pipeline.smsFilter.refreshFromRemote();
+        }
+        return pipeline;
+    }
+
+    @VisibleForTesting
+    SmsPipeline(ApiClient apiClient, RetryManager retryManager, SmsFilter smsFilter,
+                TransactionParser transactionParser, SmsDeduplicator deduplicator,
+                SimInfoManager simInfoManager) {
+        this.apiClient = apiClient;
+        this.retryManager = retryManager;
+        this.smsFilter = smsFilter;
+        this.transactionParser = transactionParser;
+        this.deduplicator = deduplicator;
+        this.simInfoManager = simInfoManager;
+    }
+
+    public void setDepthListener(DepthListener depthListener) {
+        this.depthListener = depthListener;
+    }
+
+    /**
+     * Number of messages accepted but not yet persisted or dropped.
+     */
+    public int getDepth() {
+        return inFlight.get();
+    }
+
+    /**
+     * Hands a message to its SIM's lane. Blocks only if that lane's enrich queue is full, which
+     * cannot happen from {@link SmsReceiver}: SMS_RECEIVED is an ordered broadcast, so the next
+     * one is not delivered until the listener of the previous one has run.
+     */
+    public void submit(String sender, String body, long timestamp, int subscriptionId, Listener listener) {
+        long receivedAtNanos = System.nanoTime();
+        Metrics.RECEIVED.increment();
+        Lane lane = laneFor(subscriptionId);
+        inFlight.incrementAndGet();
+        notifyDepth();
+        lane.enrichStage.execute(() -> {
+            JSONObject bodyJson;
+            try {
+                bodyJson = enrich(sender, body, timestamp, subscriptionId);
+            } catch (RuntimeException exception) {
+                Log.e(TAG, "Enrich stage failed: " + exception.getMessage());
+                bodyJson = null;
+            }
+            if (bodyJson == null) {
+                complete(listener);
+                return;
+            }
+            final JSONObject persisted = bodyJson;
+            lane.persistStage.execute(() -> {
+                try {
+                    if (retryManager.processBodyJson(persisted)) {
+                        String messageId = persisted.optString("message_id", null);
+                        if (messageId != null) {
+                            deduplicator.recordPersisted(messageId);
+                        }
+                        Metrics.RECEIVE_TO_PERSIST.record(
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedAtNanos));
+                    } else {
+                        Metrics.FILTERED.increment();
+                    }
+                } catch (RuntimeException exception) {
+                    Log.e(TAG, "Persist stage failed: " + exception.getMessage());
+                } finally {
+                    complete(listener);
+                }
+            });
+        });
+    }
+
+    private JSONObject enrich(String sender, String body, long timestamp, int subscriptionId) {
+        if (TextUtils.isEmpty(sender) || body == null) {
+            Log.w(TAG, "Missing SMS data; stopping processing.");
+            return null;
+        }
+
+        if (!smsFilter.accepts(sender, body)) {
+            Log.d(TAG, "Filtered out SMS from " + sender);
+            Metrics.FILTERED.increment();
+            return null;
+        }
+
+        SmsModel sms = new SmsModel(sender, body, timestamp, subscriptionId);
+        // Only a pre-check: the id is recorded when the outbox row is committed.
+        if (deduplicator.isDuplicate(sms.getMessageId())) {
+            Log.d(TAG, "Duplicate SMS dropped: " + sms.getMessageId());
+            Metrics.FILTERED.increment();
+            return null;
+        }
+
+        SimInfoManager.SimEntry simEntry = simInfoManager.getEntryForSubscription(subscriptionId);
+        if (simEntry == null && subscriptionId != SubscriptionManager.INVALID_SUBSCRIPTION_ID) {
+            // The change listener has not caught up with a new SIM yet.
+            simInfoManager.refresh();
+            simEntry = simInfoManager.getEntryForSubscription(subscriptionId);
+        }
+        int slotIndex = simEntry != null ? simEntry.slotIndex : SubscriptionManager.INVALID_SIM_SLOT_INDEX;
+        String receiverNumber = simInfoManager.getReceiverNumber(slotIndex);
+        String receiverIccid = simEntry != null ? simEntry.iccid : null;
+        if (TextUtils.isEmpty(receiverNumber)) {
+            Log.w(TAG, "Receiver number not configured.");
+            return null;
+        }
+
+        try {
+            ParsedTransaction parsed = transactionParser.parse(sender, body);
+            return apiClient.buildBodyJson(sms, receiverNumber, receiverIccid, parsed);
+        } catch (JSONException exception) {
+            Log.e(TAG, "Failed to build SMS body JSON: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    private void complete(Listener listener) {
+        inFlight.decrementAndGet();
+        notifyDepth();
+        if (listener != null) {
+            listener.onMessageDone();
+        }
+    }
+
+    private void notifyDepth() {
+        Metrics.setPipelineDepth(inFlight.get());
+        DepthListener listener = depthListener;
+        if (listener == null) {
+            return;
+        }
+        boolean saturated = false;
+        for (Lane lane : lanes.values()) {
+            saturated |= lane.isSaturated();
+        }
+        listener.onDepthChanged(inFlight.get(), saturated);
+    }
+
+    private Lane laneFor(int subscriptionId) {
+        Lane lane = lanes.get(subscriptionId);
+        if (lane == null) {
+            Lane created = new Lane();
+            lane = lanes.putIfAbsent(subscriptionId, created);
+            if (lane == null) {
+                lane = created;
+            } else {
+                created.shutdown();
+            }
+        }
+        return lane;
+    }
+
+    private static ThreadPoolExecutor newStage() {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(STAGE_QUEUE_CAPACITY), BLOCK_WHEN_FULL);
+    }
+}
@@ -3,17 +3,28 @@ package com.example.smsforwarder;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
 import android.provider.Telephony;
 import android.telephony.SmsMessage;
 import android.util.Log;
 import android.telephony.SubscriptionManager;
 
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
- * Receives incoming SMS intents and forwards them to the background service.
+ * Receives incoming SMS intents and hands them to the process-wide {@link SmsPipeline}. The
+ * broadcast is kept alive with {@link #goAsync()} until the message is in the outbox, so no
+ * service has to be started for it; the outbox drain loop takes it from there.
+ *
+ * <p>The first message of a process builds the pipeline, which opens the database and starts
+ * workers. That happens on {@link #HANDOFF}, never on the main thread; the single thread also
+ * keeps messages in arrival order. If the pipeline cannot take the message, it is written
+ * straight to the retry table instead.
  */
 public class SmsReceiver extends BroadcastReceiver {
     private static final String TAG = "SmsReceiver";
+    private static final ExecutorService HANDOFF = Executors.newSingleThreadExecutor();
 
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -35,19 +46,54 @@ public class SmsReceiver extends BroadcastReceiver {
             }
         }
 
+        // Service-centre timestamp of the first part; fall back to the local clock if it is missing.
+        long timestamp = messages[0].getTimestampMillis();
+        if (timestamp <= 0) {
+            timestamp = System.currentTimeMillis();
+        }
+
         int subscriptionId = intent.getIntExtra(SubscriptionManager.EXTRA_SUBSCRIPTION_INDEX, SubscriptionManager.INVALID_SUBSCRIPTION_ID);
 
-        Intent serviceIntent = new Intent(context, SmsService.class);
-        serviceIntent.setAction(SmsService.ACTION_PROCESS_SMS);
-        serviceIntent.putExtra(SmsService.EXTRA_SENDER, sender);
-        serviceIntent.putExtra(SmsService.EXTRA_BODY, bodyBuilder.toString());
-        serviceIntent.putExtra(SmsService.EXTRA_TIMESTAMP, System.currentTimeMillis());
-        serviceIntent.putExtra(SmsService.EXTRA_SUBSCRIPTION_ID, subscriptionId);
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            context.startForegroundService(serviceIntent);
-        } else {
-            context.startService(serviceIntent);
+        final PendingResult pendingResult = goAsync();
+        final Context appContext = context.getApplicationContext();
+        final String body = bodyBuilder.toString();
+        final long receivedAt = timestamp;
+        HANDOFF.execute(() -> {
+            try {
+                SmsPipeline.getInstance(appContext)
+                        .submit(sender, body, receivedAt, subscriptionId, pendingResult::finish);
+            } catch (RuntimeException exception) {
+                Log.e(TAG, "Could not hand SMS to the pipeline: " + exception.getMessage());
+                try {
+                    persistRaw(appContext, new SmsModel(sender, body, receivedAt, subscriptionId));
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Last resort when the pipeline is unusable: stores the message unfiltered and unparsed, with
+     * the fallback receiver number, so the retry worker still delivers it. If even this fails the
+     * exception propagates and takes the process down rather than losing the message quietly.
+     */
+    private static void persistRaw(Context appContext, SmsModel sms) {
+        LocalDatabase database = LocalDatabase.getInstance(appContext);
+        long now = System.currentTimeMillis();
+        boolean stored = database.runInTransaction(() -> {
+            if (database.dedupDao().insert(new DedupEntity(sms.getMessageId(), now)) == -1L) {
+                return false;
+            }
+            database.failedSmsDao().insertAll(Collections.singletonList(new FailedSmsEntity(
+                    sms.getMessageId(), sms.getSender(), sms.getContent(),
+                    AppPreferences.getFallbackReceiverNumber(appContext), "", sms.getSubscriptionId(),
+                    sms.getTimestamp(), now, null)));
+            return true;
+        });
+        if (stored) {
+            Log.w(TAG, "Stored SMS in the retry table: " + sms.getMessageId());
+            RetryDrainWorker.enqueueForBacklog(appContext, database.failedSmsDao().count());
         }
     }
 }
@@ -9,112 +9,85 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.IBinder;
-import android.text.TextUtils;
-import android.util.Log;
-import android.telephony.SubscriptionManager;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
 
-import org.json.JSONException;
-
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
+/**
+ * Long-lived foreground service started from {@link MainActivity}. It keeps the process around
+ * and shows the pipeline depth; messages themselves reach {@link SmsPipeline} from
+ * {@link SmsReceiver} without going through here.
+ */
 public class SmsService extends Service {
-    public static final String ACTION_PROCESS_SMS = "com.example.smsforwarder.action.PROCESS_SMS";
-    public static final String EXTRA_SENDER = "extra_sender";
-    public static final String EXTRA_BODY = "extra_body";
-    public static final String EXTRA_TIMESTAMP = "extra_timestamp";
-    public static final String EXTRA_SUBSCRIPTION_ID = "extra_subscription_id";
-
-    private static final String TAG = "SmsService";
-    private static final String BRAND_NAME_FILTER = "(abc|xyz)";
-    private static final String CHANNEL_ID = "sms_service_channel";
+    static final String CHANNEL_ID = "sms_service_channel";
     private static final int NOTIFICATION_ID = 1001;
 
-    private ExecutorService executorService;
-    private RetryManager retryManager;
-    private SimInfoManager simInfoManager;
-    private ApiClient apiClient;
-    private boolean isForeground;
+    private static final long NOTIFICATION_UPDATE_INTERVAL_MILLIS = 1_000L;
+
+    private SmsPipeline pipeline;
+    private volatile boolean isForeground;
+    private int notifiedDepth;
+    private boolean notifiedSaturated;
+    private long notifiedAtMillis;
 
     @Override
     public void onCreate() {
         super.onCreate();
-        executorService = Executors.newSingleThreadExecutor();
-        LocalDatabase database = LocalDatabase.getInstance(this);
-        apiClient = new ApiClient();
-        retryManager = new RetryManager(database.failedSmsDao(), apiClient);
-        simInfoManager = new SimInfoManager();
-        simInfoManager.refresh(this);
-        createNotificationChannel();
+        pipeline = SmsPipeline.getInstance(this);
+        pipeline.setDepthListener(this::onPipelineDepthChanged);
+        createNotificationChannel(this);
+        RetryManager.getInstance(this).retryFailedMessages();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent == null || !ACTION_PROCESS_SMS.equals(intent.getAction())) {
-            stopSelfResult(startId);
-            return START_NOT_STICKY;
-        }
-
         ensureForeground();
-
-        final String sender = intent.getStringExtra(EXTRA_SENDER);
-        final String body = intent.getStringExtra(EXTRA_BODY);
-        final long timestamp = intent.getLongExtra(EXTRA_TIMESTAMP, System.currentTimeMillis());
-        final int subscriptionId = intent.getIntExtra(EXTRA_SUBSCRIPTION_ID, SubscriptionManager.INVALID_SUBSCRIPTION_ID);
-
-        executorService.execute(() -> handleIncomingSms(startId, sender, body, timestamp, subscriptionId));
-        return START_NOT_STICKY;
+        return START_STICKY;
     }
 
-    private void handleIncomingSms(int startId, String sender, String body, long timestamp, int subscriptionId) {
-        retryManager.retryFailedMessages();
-        simInfoManager.refresh(this);
-
-        if (TextUtils.isEmpty(sender) || body == null) {
-            Log.w(TAG, "Missing SMS data; stopping processing.");
-            stopSelfResult(startId);
-            return;
+    /**
+     * Starts the service from a foreground context such as {@link MainActivity}.
+     */
+    public static void start(Context context) {
+        Intent intent = new Intent(context, SmsService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
         }
+    }
 
-        SmsModel sms = new SmsModel(sender, body, timestamp);
-        if (!sms.matchesFilter(BRAND_NAME_FILTER)) {
-            Log.d(TAG, "Sender does not pass filter: " + sender);
-            stopSelfResult(startId);
+    private synchronized void onPipelineDepthChanged(int depth, boolean saturated) {
+        if (!isForeground) {
             return;
         }
-
-        SimInfoManager.SimEntry simEntry = simInfoManager.getEntryForSubscription(subscriptionId);
-        int slotIndex = simEntry != null ? simEntry.slotIndex : SubscriptionManager.INVALID_SIM_SLOT_INDEX;
-        String receiverNumber = simInfoManager.getReceiverNumber(slotIndex);
-        String receiverIccid = simEntry != null ? simEntry.iccid : null;
-        if (TextUtils.isEmpty(receiverNumber)) {
-            Log.w(TAG, "Receiver number not configured.");
-            stopSelfResult(startId);
+        long now = System.currentTimeMillis();
+        boolean changed = depth != notifiedDepth || saturated != notifiedSaturated;
+        boolean due = depth == 0 || saturated != notifiedSaturated
+                || now - notifiedAtMillis >= NOTIFICATION_UPDATE_INTERVAL_MILLIS;
+        if (!changed || !due) {
             return;
         }
-
-        try {
-            org.json.JSONObject bodyJson = apiClient.buildBodyJson(sms, receiverNumber, receiverIccid);
-            retryManager.processBodyJson(bodyJson);
-        } catch (JSONException exception) {
-            Log.e(TAG, "Failed to build SMS body JSON: " + exception.getMessage());
+        notifiedDepth = depth;
+        notifiedSaturated = saturated;
+        notifiedAtMillis = now;
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager != null) {
+            manager.notify(NOTIFICATION_ID, createServiceNotification(depth, saturated));
         }
-        stopSelfResult(startId);
     }
 
     private void ensureForeground() {
         if (isForeground) {
             return;
         }
-        Notification notification = createServiceNotification();
+        Notification notification = createServiceNotification(pipeline.getDepth(), false);
         startForeground(NOTIFICATION_ID, notification);
         isForeground = true;
     }
 
-    private Notification createServiceNotification() {
+    private Notification createServiceNotification(int depth, boolean saturated) {
         Intent intent = new Intent(this, MainActivity.class);
         int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
                 ? PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
@@ -123,18 +96,26 @@ public class SmsService extends Service {
 
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle(getString(R.string.app_name))
-            .setContentText(getString(R.string.service_notification_message))
+                .setContentText(notificationText(depth, saturated))
                 .setSmallIcon(android.R.drawable.ic_dialog_email)
                 .setContentIntent(pendingIntent)
                 .setOngoing(true)
+                .setOnlyAlertOnce(true)
                 .build();
     }
 
-    private void createNotificationChannel() {
+    private String notificationText(int depth, boolean saturated) {
+        if (depth == 0) {
+            return getString(R.string.service_notification_message);
+        }
+        return getString(saturated ? R.string.service_notification_backpressure : R.string.service_notification_queue, depth);
+    }
+
+    static void createNotificationChannel(Context context) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
             return;
         }
-        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         if (manager == null) {
             return;
         }
@@ -157,9 +138,9 @@ public class SmsService extends Service {
     public void onDestroy() {
         super.onDestroy();
         if (isForeground) {
-            stopForeground(true);
+            ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
             isForeground = false;
         }
-        executorService.shutdownNow();
+        pipeline.setDepthListener(null);
     }
 }
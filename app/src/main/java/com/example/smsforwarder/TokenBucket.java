@@ -0,0 +1,57 @@
+package com.example.smsforwarder;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Rate limiter that refills continuously at a fixed rate up to a burst capacity. A request for
+ * more than the capacity is admitted once the bucket is full and leaves it in debt, so large
+ * batches still average out to the configured rate.
+ */
+final class TokenBucket {
+    interface Clock {
+        long nowMillis();
+    }
+
+    private final double tokensPerMilli;
+    private final double capacity;
+    private final Clock clock;
+    private double tokens;
+    private long lastRefillMillis;
+
+    TokenBucket(double tokensPerSecond, double capacity) {
+        this(tokensPerSecond, capacity, () -> System.nanoTime() / 1_000_000L);
+    }
+
+    @VisibleForTesting
+    TokenBucket(double tokensPerSecond, double capacity, Clock clock) {
+        this.tokensPerMilli = tokensPerSecond / 1000.0;
+        this.capacity = capacity;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.lastRefillMillis = clock.nowMillis();
+    }
+
+    synchronized boolean tryAcquire(int count) {
+        refill();
+        if (tokens < Math.min(count, capacity)) {
+            return false;
+        }
+        tokens -= count;
+        return true;
+    }
+
+    /**
+     * How long until {@link #tryAcquire(int)} would succeed for {@code count}.
+     */
+    synchronized long millisUntilAvailable(int count) {
+        refill();
+        double missing = Math.min(count, capacity) - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / tokensPerMilli);
+    }
+
+    private void refill() {
+        long now = clock.nowMillis();
+        tokens = Math.min(capacity, tokens + (now - lastRefillMillis) * tokensPerMilli);
+        lastRefillMillis = now;
+    }
+}
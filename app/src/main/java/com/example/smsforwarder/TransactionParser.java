@@ -0,0 +1,73 @@
+package com.example.smsforwarder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Turns bank SMS into {@link ParsedTransaction}s on the phone, so the backend can go straight to
+ * the reference lookup instead of running its own regexes over {@code content}. The sender picks
+ * the bank profile; senders no profile claims fall back to a generic template.
+ */
+public final class TransactionParser {
+    // Labels are anchored on word boundaries so "and", "send", "fund" or "USD" never match them.
+    private static final BankProfile GENERIC = BankProfile.generic(
+            "([+-])\\s?(\\d[\\d,.]*)\\s?(?:VND|đ)",
+            "\\b(?:TK|tai khoan)\\b\\s*:?\\s*([\\dxX*]{6,})",
+            "\\b(?:Ref|ND|Noi dung|Ma GD)\\b\\s*:?\\s*(\\S+)",
+            "\\b(?:SD|So du)\\b\\s*:?\\s*(\\d[\\d,.]*)");
+
+    private static final TransactionParser DEFAULT = new TransactionParser();
+
+    private final List<BankProfile> profiles = new CopyOnWriteArrayList<>();
+
+    private TransactionParser() {
+        // SD TK 0011004123456 +2,000,000VND luc 18-10-2026 09:15:22. SD 12,345,678VND. Ref MBVCB.3456789012...
+        register(new BankProfile("VCB", new String[]{"vietcombank", "vcb"},
+                "TK\\s+[\\dxX*]+\\s+([+-])(\\d[\\d,.]*)\\s*VND",
+                "TK\\s+([\\dxX*]{6,})",
+                "Ref\\s+(\\S+)",
+                "\\.\\s*SD\\s+(\\d[\\d,.]*)\\s*VND"));
+        // TK 19031234567890 So tien GD:+1,500,000 So du:10,250,000 ND: FT26291ABCD12 ...
+        register(new BankProfile("TCB", new String[]{"techcombank"},
+                "So tien GD:\\s*([+-])(\\d[\\d,.]*)",
+                "TK\\s+([\\dxX*]{6,})",
+                "ND:\\s*(\\S+)",
+                "So du:\\s*(\\d[\\d,.]*)"));
+        // TK 0123xxx456|GD: +500,000VND 18/10/26 10:00|SD: 3,000,000VND|ND: MB123456 ...
+        register(new BankProfile("MB", new String[]{"mbbank", "mb bank"},
+                "GD:\\s*([+-])(\\d[\\d,.]*)",
+                "TK\\s+([\\dxX*]{6,})",
+                "ND:\\s*(\\S+)",
+                "SD:\\s*(\\d[\\d,.]*)"));
+    }
+
+    public static TransactionParser getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Adds a profile; it is consulted after the ones registered before it.
+     */
+    public void register(BankProfile profile) {
+        profiles.add(profile);
+    }
+
+    /**
+     * Returns the parsed fields, or {@code null} if the body does not look like a transaction.
+     */
+    public ParsedTransaction parse(String sender, String body) {
+        if (body == null) {
+            return null;
+        }
+        for (BankProfile profile : profiles) {
+            if (profile.senders.matchesAny(sender)) {
+                ParsedTransaction parsed = profile.parse(body);
+                if (parsed != null) {
+                    return parsed;
+                }
+                break;
+            }
+        }
+        return GENERIC.parse(body);
+    }
+}
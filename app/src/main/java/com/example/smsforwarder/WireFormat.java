@@ -0,0 +1,100 @@
+package com.example.smsforwarder;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * How a batch is laid out on the wire for one endpoint. Both options need server support, so the
+ * default is the plain row layout without compression.
+ *
+ * <p>{@link Layout#COLUMNAR} replaces {@code data} with
+ * {@code {"dict": {field: [values...]}, "rows": [...]}}: fields that repeat across a batch
+ * ({@link #DICTIONARY_FIELDS}) are sent once in {@code dict} and each row carries the index into
+ * it instead of the value.
+ */
+public final class WireFormat {
+    public enum Layout {
+        ROWS,
+        COLUMNAR
+    }
+
+    public static final int GZIP_DISABLED = -1;
+    public static final WireFormat DEFAULT = new WireFormat(Layout.ROWS, GZIP_DISABLED);
+
+    static final String[] DICTIONARY_FIELDS = {"sender", "receiver_number", "receiver_iccid"};
+
+    public final Layout layout;
+    public final int gzipThresholdBytes;
+
+    /**
+     * @param gzipThresholdBytes bodies at least this large are sent with
+     *                           {@code Content-Encoding: gzip}; {@link #GZIP_DISABLED} turns it off
+     */
+    public WireFormat(Layout layout, int gzipThresholdBytes) {
+        this.layout = layout;
+        this.gzipThresholdBytes = gzipThresholdBytes;
+    }
+
+    boolean shouldGzip(long contentLength) {
+        return gzipThresholdBytes >= 0 && contentLength >= gzipThresholdBytes;
+    }
+
+    /**
+     * Writes the columnar form of the payloads. Unlike the row layout this has to parse every
+     * payload, which the smaller body pays back on slow links.
+     */
+    static void writeColumnar(BufferedSink sink, List<String> payloads) throws JSONException, IOException {
+        Map<String, Map<String, Integer>> indexes = new HashMap<>();
+        JSONObject dict = new JSONObject();
+        for (String field : DICTIONARY_FIELDS) {
+            indexes.put(field, new HashMap<>());
+            dict.put(field, new JSONArray());
+        }
+        JSONArray rows = new JSONArray();
+        for (String payload : payloads) {
+            JSONObject row = new JSONObject(payload);
+            for (String field : DICTIONARY_FIELDS) {
+                if (!row.has(field)) {
+                    continue;
+                }
+                String value = row.optString(field);
+                Map<String, Integer> index = indexes.get(field);
+                Integer position = index.get(value);
+                if (position == null) {
+                    position = index.size();
+                    index.put(value, position);
+                    dict.getJSONArray(field).put(value);
+                }
+                row.put(field, position.intValue());
+            }
+            rows.put(row);
+        }
+        JSONObject columnar = new JSONObject();
+        columnar.put("dict", dict);
+        columnar.put("rows", rows);
+        sink.writeUtf8(columnar.toString());
+    }
+
+    /**
+     * Compresses the body up front so the request still carries a Content-Length.
+     */
+    static RequestBody gzip(RequestBody body) throws IOException {
+        Buffer compressed = new Buffer();
+        BufferedSink gzipSink = Okio.buffer(new GzipSink(compressed));
+        body.writeTo(gzipSink);
+        gzipSink.close();
+        return RequestBody.create(compressed.readByteString(), body.contentType());
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.GzipSource;
+
+public class ApiClientTest {
+    private MockWebServer server;
+    private ApiClient apiClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        apiClient = new ApiClient(new OkHttpClient(), server.url("/pay/sms3money").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        EndpointHealth.clearRegistry();
+    }
+
+    @Test
+    public void perItemResultsAreMappedInOrder() throws Exception {
+        server.enqueue(new MockResponse().setBody(
+                "{\"results\":[\"ok\",{\"status\":\"rejected\",\"reason\":\"bad sender\"},{\"status\":\"retry\"}]}"));
+
+        List<DeliveryResult> results = send(batchOf(3));
+
+        assertEquals(3, results.size());
+        assertEquals(DeliveryResult.Status.ACKED, results.get(0).status);
+        assertEquals(DeliveryResult.Status.REJECTED, results.get(1).status);
+        assertEquals("bad sender", results.get(1).reason);
+        assertEquals(DeliveryResult.Status.TRANSIENT, results.get(2).status);
+
+        RecordedRequest request = server.takeRequest();
+        JSONObject body = new JSONObject(request.getBody().readUtf8());
+        assertEquals(3, body.getJSONArray("data").length());
+    }
+
+    @Test
+    public void explicitIndexesOverridePosition() throws Exception {
+        server.enqueue(new MockResponse().setBody(
+                "{\"results\":[{\"index\":1,\"status\":\"ok\"},{\"index\":0,\"status\":\"invalid\"}]}"));
+
+        List<DeliveryResult> results = send(batchOf(2));
+
+        assertEquals(DeliveryResult.Status.REJECTED, results.get(0).status);
+        assertEquals(DeliveryResult.Status.ACKED, results.get(1).status);
+    }
+
+    @Test
+    public void missingItemResultsAreTransient() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"results\":[\"ok\"]}"));
+
+        List<DeliveryResult> results = send(batchOf(2));
+
+        assertEquals(DeliveryResult.Status.ACKED, results.get(0).status);
+        assertEquals(DeliveryResult.Status.TRANSIENT, results.get(1).status);
+    }
+
+    @Test
+    public void plainSuccessAcksWholeBatch() throws Exception {
+        server.enqueue(new MockResponse().setBody("OK"));
+
+        List<DeliveryResult> results = send(batchOf(2));
+
+        assertEquals(DeliveryResult.Status.ACKED, results.get(0).status);
+        assertEquals(DeliveryResult.Status.ACKED, results.get(1).status);
+    }
+
+    @Test
+    public void serverErrorIsTransientAndClientErrorIsRejected() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        assertEquals(DeliveryResult.Status.TRANSIENT, send(batchOf(1)).get(0).status);
+
+        server.enqueue(new MockResponse().setResponseCode(422));
+        assertEquals(DeliveryResult.Status.REJECTED, send(batchOf(1)).get(0).status);
+
+        server.enqueue(new MockResponse().setResponseCode(429));
+        assertEquals(DeliveryResult.Status.TRANSIENT, send(batchOf(1)).get(0).status);
+    }
+
+    @Test
+    public void connectionFailureIsTransientForEveryItem() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+        List<DeliveryResult> results = send(batchOf(2));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).status == DeliveryResult.Status.TRANSIENT);
+        assertTrue(results.get(1).status == DeliveryResult.Status.TRANSIENT);
+    }
+
+    @Test
+    public void bodiesAboveThresholdAreGzipped() throws Exception {
+        ApiClient gzipClient = new ApiClient(new OkHttpClient(), server.url("/pay/sms3money").toString(),
+                null, new WireFormat(WireFormat.Layout.ROWS, 512));
+        server.enqueue(new MockResponse().setBody("OK"));
+        server.enqueue(new MockResponse().setBody("OK"));
+
+        send(gzipClient, batchOf(1));
+        send(gzipClient, batchOf(20));
+
+        RecordedRequest small = server.takeRequest();
+        assertNull(small.getHeader("Content-Encoding"));
+        RecordedRequest large = server.takeRequest();
+        assertEquals("gzip", large.getHeader("Content-Encoding"));
+        Buffer inflated = new Buffer();
+        inflated.writeAll(new GzipSource(large.getBody()));
+        assertEquals(20, new JSONObject(inflated.readUtf8()).getJSONArray("data").length());
+    }
+
+    @Test
+    public void columnarLayoutSendsRepeatedFieldsOnce() throws Exception {
+        ApiClient columnarClient = new ApiClient(new OkHttpClient(), server.url("/pay/sms3money").toString(),
+                null, new WireFormat(WireFormat.Layout.COLUMNAR, WireFormat.GZIP_DISABLED));
+        server.enqueue(new MockResponse().setBody("OK"));
+
+        send(columnarClient, batchOf(3));
+
+        JSONObject body = new JSONObject(server.takeRequest().getBody().readUtf8());
+        assertEquals("columnar", body.getString("format"));
+        JSONObject data = body.getJSONObject("data");
+        assertEquals(1, data.getJSONObject("dict").getJSONArray("receiver_number").length());
+        assertEquals(3, data.getJSONObject("dict").getJSONArray("sender").length());
+        JSONArray rows = data.getJSONArray("rows");
+        assertEquals(3, rows.length());
+        assertEquals(0, rows.getJSONObject(2).getInt("receiver_number"));
+        assertEquals(2, rows.getJSONObject(2).getInt("sender"));
+        assertEquals("Balance +2VND", rows.getJSONObject(2).getString("content"));
+    }
+
+    @Test
+    public void heartbeatRidesAlongOnTheNextBatchOnly() throws Exception {
+        server.enqueue(new MockResponse().setBody("OK"));
+        server.enqueue(new MockResponse().setBody("OK"));
+        TestHeartbeatSource heartbeat = new TestHeartbeatSource("{\"device\":\"d1\"}");
+        apiClient.setHeartbeatSource(heartbeat);
+
+        send(batchOf(1));
+        send(batchOf(1));
+
+        JSONObject first = new JSONObject(server.takeRequest().getBody().readUtf8());
+        assertEquals("d1", first.getJSONObject("heartbeat").getString("device"));
+        assertEquals(1, first.getJSONArray("data").length());
+        JSONObject second = new JSONObject(server.takeRequest().getBody().readUtf8());
+        assertFalse(second.has("heartbeat"));
+    }
+
+    @Test
+    public void heartbeatStaysPendingWhenTheBatchFails() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("OK"));
+        TestHeartbeatSource heartbeat = new TestHeartbeatSource("{\"device\":\"d1\"}");
+        apiClient.setHeartbeatSource(heartbeat);
+
+        send(batchOf(1));
+        assertNotNull(heartbeat.peek());
+        send(batchOf(1));
+
+        server.takeRequest();
+        JSONObject retried = new JSONObject(server.takeRequest().getBody().readUtf8());
+        assertEquals("d1", retried.getJSONObject("heartbeat").getString("device"));
+        assertNull(heartbeat.peek());
+    }
+
+    @Test
+    public void heartbeatIsSealedOnSealedEndpoints() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        ApiClient sealed = new ApiClient(new OkHttpClient(), server.url("/pay/sms").toString(),
+                new EncryptionEngine(keyPair.getPublic()));
+        server.enqueue(new MockResponse().setBody("OK"));
+        TestHeartbeatSource heartbeat = new TestHeartbeatSource("{\"iccid\":\"8984001\"}");
+        sealed.setHeartbeatSource(heartbeat);
+
+        send(sealed, batchOf(2));
+
+        String raw = server.takeRequest().getBody().readUtf8();
+        assertFalse(raw.contains("8984001"));
+        JSONObject body = new JSONObject(raw);
+        assertTrue(body.getBoolean("sealed_heartbeat"));
+        JSONObject plaintext = new JSONObject(
+                EncryptionEngineTest.open(body.getJSONObject("envelope"), keyPair.getPrivate()));
+        assertEquals("8984001", plaintext.getJSONObject("heartbeat").getString("iccid"));
+        assertEquals(2, plaintext.getJSONArray("data").length());
+        assertNull(heartbeat.peek());
+    }
+
+    @Test
+    public void standaloneHeartbeatIsSealedOnSealedEndpoints() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        ApiClient sealed = new ApiClient(new OkHttpClient(), server.url("/pay/sms").toString(),
+                new EncryptionEngine(keyPair.getPublic()));
+        server.enqueue(new MockResponse().setBody("OK"));
+
+        sealed.sendHeartbeatAsync("{\"iccid\":\"8984001\"}");
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        String raw = request.getBody().readUtf8();
+        assertFalse(raw.contains("8984001"));
+        JSONObject body = new JSONObject(raw);
+        assertFalse(body.has("heartbeat"));
+        JSONObject plaintext = new JSONObject(
+                EncryptionEngineTest.open(body.getJSONObject("envelope"), keyPair.getPrivate()));
+        assertEquals("8984001", plaintext.getJSONObject("heartbeat").getString("iccid"));
+    }
+
+    @Test
+    public void standaloneHeartbeatCarriesNoData() throws Exception {
+        server.enqueue(new MockResponse().setBody("OK"));
+
+        apiClient.sendHeartbeatAsync("{\"device\":\"d1\"}");
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        JSONObject body = new JSONObject(request.getBody().readUtf8());
+        assertEquals("d1", body.getJSONObject("heartbeat").getString("device"));
+        assertFalse(body.has("data"));
+    }
+
+    @Test
+    public void requestThatCannotBeBuiltCountsAsAnEndpointFailure() throws Exception {
+        ApiClient broken = new ApiClient(new OkHttpClient(), "not a url " + System.nanoTime());
+
+        List<DeliveryResult> results = send(broken, batchOf(1));
+
+        assertEquals(DeliveryResult.Status.TRANSIENT, results.get(0).status);
+        assertEquals(1, broken.getEndpointHealth().getConsecutiveFailures());
+    }
+
+    @Test
+    public void emptyOrMissingBatchCompletesWithoutARequest() throws Exception {
+        assertTrue(send(new JSONArray()).isEmpty());
+        assertTrue(send(null).isEmpty());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void encryptJsonKeepsTheLineWrappedEncoding() throws Exception {
+        String encrypted = apiClient.encryptJson("{\"sender\":\"BANK\"}");
+
+        assertTrue(encrypted.endsWith("\n"));
+        String[] lines = encrypted.split("\n");
+        for (int index = 0; index < lines.length - 1; index++) {
+            assertEquals(76, lines[index].length());
+        }
+        assertEquals(256, Base64.getMimeDecoder().decode(encrypted).length);
+    }
+
+    /** Mirrors {@link HeartbeatReporter}: pending until a request carrying it succeeds. */
+    private static final class TestHeartbeatSource implements ApiClient.HeartbeatSource {
+        private final AtomicReference<String> pending;
+
+        TestHeartbeatSource(String heartbeat) {
+            pending = new AtomicReference<>(heartbeat);
+        }
+
+        @Override
+        public String peek() {
+            return pending.get();
+        }
+
+        @Override
+        public void onDelivered(String heartbeat) {
+            pending.compareAndSet(heartbeat, null);
+        }
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private List<DeliveryResult> send(JSONArray data) throws InterruptedException {
+        return send(apiClient, data);
+    }
+
+    private List<DeliveryResult> send(ApiClient apiClient, JSONArray data) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<List<DeliveryResult>> received = new AtomicReference<>();
+        apiClient.sendEncryptedListAsync(data, results -> {
+            received.set(results);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(received.get());
+        return received.get();
+    }
+
+    private static JSONArray batchOf(int count) throws Exception {
+        JSONArray data = new JSONArray();
+        for (int index = 0; index < count; index++) {
+            JSONObject item = new JSONObject();
+            item.put("sender", "BANK" + index);
+            item.put("content", "Balance +" + index + "VND");
+            item.put("receiver_number", "0900000000");
+            data.put(item);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class BatchingSenderTest {
+    private MockWebServer server;
+    private BatchingSender batchingSender;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        // Rejects any request that carries the bad row, like a server failing the whole body.
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                boolean bad = request.getBody().readUtf8().contains("\"bad\"");
+                return new MockResponse().setResponseCode(bad ? 400 : 200).setBody(bad ? "" : "OK");
+            }
+        });
+        server.start();
+        Endpoint endpoint = new Endpoint("primary", server.url("/pay/sms3money").toString(), "token",
+                WireFormat.DEFAULT, false);
+        EndpointRouter router = new EndpointRouter(
+                Collections.singletonList(new ApiClient(new OkHttpClient(), endpoint)),
+                EndpointRouter.Mode.FAILOVER, false);
+        batchingSender = new BatchingSender(new PrioritySender(router, new TokenBucket(100, 100)),
+                new BatchingSender.Config(3, 60_000, 64 * 1024));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        EndpointHealth.clearRegistry();
+    }
+
+    @Test
+    public void rejectedBatchIsRetriedRowByRow() throws Exception {
+        ConcurrentHashMap<String, DeliveryResult> results = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(3);
+        for (String payload : new String[] {"{\"n\":0}", "{\"n\":\"bad\"}", "{\"n\":2}"}) {
+            batchingSender.submit(payload, result -> {
+                results.put(payload, result);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(DeliveryResult.Status.ACKED, results.get("{\"n\":0}").status);
+        assertEquals(DeliveryResult.Status.REJECTED, results.get("{\"n\":\"bad\"}").status);
+        assertEquals(DeliveryResult.Status.ACKED, results.get("{\"n\":2}").status);
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void malformedRowIsRejectedWithoutBeingSent() throws Exception {
+        ConcurrentHashMap<String, DeliveryResult> results = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(3);
+        for (String payload : new String[] {"{\"n\":0}", "{\"n\":}", "{\"n\":2}"}) {
+            batchingSender.submit(payload, result -> {
+                results.put(payload, result);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(DeliveryResult.Status.ACKED, results.get("{\"n\":0}").status);
+        assertEquals(DeliveryResult.Status.REJECTED, results.get("{\"n\":}").status);
+        assertEquals(DeliveryResult.Status.ACKED, results.get("{\"n\":2}").status);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void byteLimitCountsEncodedBytesNotChars() throws Exception {
+        // 18 chars but 38 UTF-8 bytes: only a byte count reaches the limit and flushes at once.
+        String payload = "{\"c\":\"ốốốốốốốốốố\"}";
+        BatchingSender sized = new BatchingSender(new PrioritySender(new EndpointRouter(
+                Collections.singletonList(new ApiClient(new OkHttpClient(), new Endpoint("primary",
+                        server.url("/pay/sms3money").toString(), "token", WireFormat.DEFAULT, false))),
+                EndpointRouter.Mode.FAILOVER, false), new TokenBucket(100, 100)),
+                new BatchingSender.Config(3, 60_000, 38));
+        CountDownLatch done = new CountDownLatch(1);
+        sized.submit(payload, result -> done.countDown());
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+}
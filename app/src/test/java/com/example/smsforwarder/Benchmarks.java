@@ -0,0 +1,71 @@
+package com.example.smsforwarder;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal JVM micro-benchmark runner for the unit-test source set: a timed warm-up, then several
+ * timed rounds, reporting the median time per operation. Results are handed to a volatile sink so
+ * the JIT cannot drop the work.
+ *
+ * <p>Benchmarks and load tests only run with {@code ./gradlew testDebugUnitTest -Pbenchmark}.
+ */
+final class Benchmarks {
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final double nanosPerOp;
+
+        Result(String name, double nanosPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-40s %12.1f ns/op %12.0f ops/s", name, nanosPerOp, 1e9 / nanosPerOp);
+        }
+    }
+
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long ROUND_NANOS = 500_000_000L;
+    private static final int ROUNDS = 5;
+
+    static volatile Object sink;
+
+    private Benchmarks() {
+    }
+
+    static boolean enabled() {
+        return Boolean.getBoolean("benchmark");
+    }
+
+    static Result measure(String name, Operation operation) throws Exception {
+        runFor(WARMUP_NANOS, operation);
+        double[] rounds = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            rounds[round] = runFor(ROUND_NANOS, operation);
+        }
+        Arrays.sort(rounds);
+        Result result = new Result(name, rounds[ROUNDS / 2]);
+        System.out.println(result);
+        return result;
+    }
+
+    private static double runFor(long budgetNanos, Operation operation) throws Exception {
+        long start = System.nanoTime();
+        long operations = 0;
+        long elapsed;
+        do {
+            for (int repeat = 0; repeat < 16; repeat++) {
+                sink = operation.run();
+            }
+            operations += 16;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < budgetNanos);
+        return (double) elapsed / operations;
+    }
+}
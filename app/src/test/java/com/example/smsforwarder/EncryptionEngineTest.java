@@ -0,0 +1,103 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+
+public class EncryptionEngineTest {
+    private static final OAEPParameterSpec OAEP_SHA256 = new OAEPParameterSpec(
+            "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void generateKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @Test
+    public void rsaEncryptRoundTrips() throws Exception {
+        EncryptionEngine engine = new EncryptionEngine(keyPair.getPublic());
+
+        String encrypted = engine.encrypt("{\"sender\":\"BANK\"}");
+
+        assertEquals("{\"sender\":\"BANK\"}", new String(rsaDecrypt(Base64.getDecoder().decode(encrypted)),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void sealedEnvelopeRoundTripsPayloadLargerThanRsaLimit() throws Exception {
+        EncryptionEngine engine = new EncryptionEngine(keyPair.getPublic());
+        StringBuilder builder = new StringBuilder();
+        for (int index = 0; index < 500; index++) {
+            builder.append("{\"content\":\"Balance +").append(index).append("VND\"},");
+        }
+        String payload = builder.toString();
+
+        JSONObject envelope = engine.seal(payload);
+
+        assertEquals(EncryptionEngine.ENVELOPE_ALGORITHM, envelope.getString("alg"));
+        assertEquals(payload, open(envelope));
+    }
+
+    @Test
+    public void everySealUsesAFreshKeyAndIv() throws Exception {
+        EncryptionEngine engine = new EncryptionEngine(keyPair.getPublic());
+
+        JSONObject first = engine.seal("same");
+        JSONObject second = engine.seal("same");
+
+        assertEquals("same", open(first));
+        assertEquals("same", open(second));
+        assertNotEquals(first.getString("iv"), second.getString("iv"));
+        assertNotEquals(first.getString("data"), second.getString("data"));
+    }
+
+    @Test
+    public void bundledServerKeyParses() throws Exception {
+        assertNotNull(ApiClient.defaultEngine().seal("{}"));
+    }
+
+    private static String open(JSONObject envelope) throws Exception {
+        return open(envelope, keyPair.getPrivate());
+    }
+
+    /** Decrypts what {@link EncryptionEngine#seal} produced, as the server does. */
+    static String open(JSONObject envelope, PrivateKey privateKey) throws Exception {
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] contentKey = rsaDecrypt(decoder.decode(envelope.getString("key")), privateKey);
+        Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+        aes.init(Cipher.DECRYPT_MODE, new SecretKeySpec(contentKey, "AES"),
+                new GCMParameterSpec(128, decoder.decode(envelope.getString("iv"))));
+        return new String(aes.doFinal(decoder.decode(envelope.getString("data"))), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] rsaDecrypt(byte[] encrypted) throws Exception {
+        return rsaDecrypt(encrypted, keyPair.getPrivate());
+    }
+
+    private static byte[] rsaDecrypt(byte[] encrypted, PrivateKey privateKey) throws Exception {
+        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        rsa.init(Cipher.DECRYPT_MODE, privateKey, OAEP_SHA256);
+        return rsa.doFinal(encrypted);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class EndpointRouterTest {
+    private MockWebServer primaryServer;
+    private MockWebServer secondaryServer;
+    private ApiClient primary;
+    private ApiClient secondary;
+
+    @Before
+    public void setUp() throws Exception {
+        primaryServer = new MockWebServer();
+        secondaryServer = new MockWebServer();
+        primaryServer.start();
+        secondaryServer.start();
+        OkHttpClient client = new OkHttpClient();
+        primary = new ApiClient(client, endpoint("primary", primaryServer));
+        secondary = new ApiClient(client, endpoint("secondary", secondaryServer));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        primaryServer.shutdown();
+        secondaryServer.shutdown();
+        EndpointHealth.clearRegistry();
+    }
+
+    @Test
+    public void configValidationMatchesWhatTheRouterWouldUse() {
+        assertTrue(EndpointRouter.isValidConfig(
+                "{\"mode\":\"latency\",\"endpoints\":[{\"url\":\"https://a.example/sms\"}]}"));
+        assertFalse(EndpointRouter.isValidConfig("{\"endpoints\":[]}"));
+        assertFalse(EndpointRouter.isValidConfig("{\"endpoints\":[{\"url\":\"not a url\"}]}"));
+        assertFalse(EndpointRouter.isValidConfig("{\"endpoints\":[{\"id\":\"no-url\"}]}"));
+        assertFalse(EndpointRouter.isValidConfig("endpoints"));
+        assertFalse(EndpointRouter.isValidConfig(""));
+    }
+
+    @Test
+    public void transientItemsFailOverToTheNextEndpoint() throws Exception {
+        primaryServer.enqueue(new MockResponse().setBody("{\"results\":[\"ok\",\"retry\"]}"));
+        secondaryServer.enqueue(new MockResponse().setBody("{\"results\":[\"ok\"]}"));
+        EndpointRouter router = new EndpointRouter(Arrays.asList(primary, secondary),
+                EndpointRouter.Mode.FAILOVER, false);
+
+        List<DeliveryResult> results = send(router, "{\"n\":0}", "{\"n\":1}");
+
+        assertEquals(DeliveryResult.Status.ACKED, results.get(0).status);
+        assertEquals("primary", results.get(0).endpointId);
+        assertEquals(DeliveryResult.Status.ACKED, results.get(1).status);
+        assertEquals("secondary", results.get(1).endpointId);
+        assertEquals("[{\"n\":1}]", new JSONObject(secondaryServer.takeRequest().getBody().readUtf8())
+                .getJSONArray("data").toString());
+    }
+
+    @Test
+    public void openEndpointsAreSkipped() throws Exception {
+        for (int failure = 0; failure < 3; failure++) {
+            primary.getEndpointHealth().recordFailure();
+        }
+        secondaryServer.enqueue(new MockResponse().setBody("OK"));
+        EndpointRouter router = new EndpointRouter(Arrays.asList(primary, secondary),
+                EndpointRouter.Mode.FAILOVER, false);
+
+        List<DeliveryResult> results = send(router, "{\"n\":0}");
+
+        assertEquals("secondary", results.get(0).endpointId);
+        assertEquals(0, primaryServer.getRequestCount());
+    }
+
+    @Test
+    public void fanOutCompletesOnTheFirstFullAcknowledgement() throws Exception {
+        primaryServer.enqueue(new MockResponse().setBody("OK").setHeadersDelay(3, TimeUnit.SECONDS));
+        secondaryServer.enqueue(new MockResponse().setBody("OK"));
+        EndpointRouter router = new EndpointRouter(Arrays.asList(primary, secondary),
+                EndpointRouter.Mode.FAILOVER, true);
+
+        long start = System.nanoTime();
+        List<DeliveryResult> results = send(router, "{\"n\":0}");
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+        assertEquals(DeliveryResult.Status.ACKED, results.get(0).status);
+        assertEquals("secondary", results.get(0).endpointId);
+    }
+
+    private static Endpoint endpoint(String id, MockWebServer server) {
+        return new Endpoint(id, server.url("/pay/sms3money").toString(), "token-" + id, WireFormat.DEFAULT, false);
+    }
+
+    private static List<DeliveryResult> send(EndpointRouter router, String... payloads) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<List<DeliveryResult>> received = new AtomicReference<>();
+        router.sendPayloadsAsync(Arrays.asList(payloads), results -> {
+            received.set(results);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(received.get());
+        return received.get();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+
+public class FailedSmsEntityTest {
+    @Test
+    public void payloadRoundTripsThroughTypedColumns() throws Exception {
+        String payload = "{\"message_id\":\"abc\",\"sender\":\"VCB\",\"content\":\"So du \\\"+1\\\"\","
+                + "\"receiver_number\":\"0900000000\",\"sent_at\":10,\"received_at\":10,"
+                + "\"receiver_iccid\":\"8984\",\"subscription_id\":2,"
+                + "\"parsed\":{\"bank\":\"VCB\",\"amount\":1000},\"inserted_at\":20}";
+
+        List<FailedSmsEntity> rows = FailedSmsEntity.fromPayload(payload, 0L);
+
+        assertEquals(1, rows.size());
+        FailedSmsEntity row = rows.get(0);
+        assertEquals("So du \"+1\"", row.getBody());
+        assertEquals(2, row.getSubscriptionId());
+        assertEquals(20L, row.getCreatedAt());
+        JSONObject rebuilt = new JSONObject(row.toPayload());
+        JSONObject original = new JSONObject(payload);
+        for (String key : new String[] {"message_id", "sender", "content", "receiver_number", "sent_at",
+                "received_at", "receiver_iccid", "subscription_id", "inserted_at"}) {
+            assertEquals(key, original.get(key).toString(), rebuilt.get(key).toString());
+        }
+        assertEquals(1000L, rebuilt.getJSONObject("parsed").getLong("amount"));
+    }
+
+    @Test
+    public void legacyArrayRowsBecomeOneRowPerElement() throws Exception {
+        String payload = "[{\"sender\":\"A\",\"content\":\"one\",\"received_at\":1,\"inserted_at\":1},"
+                + "{\"sender\":\"B\",\"content\":\"two\",\"received_at\":2,\"inserted_at\":2}]";
+
+        List<FailedSmsEntity> rows = FailedSmsEntity.fromPayload(payload, 0L);
+
+        assertEquals(2, rows.size());
+        assertEquals("two", rows.get(1).getBody());
+        JSONObject first = new JSONObject(rows.get(0).toPayload());
+        assertFalse(first.has("message_id"));
+        assertFalse(first.has("subscription_id"));
+        assertEquals("", first.getString("receiver_iccid"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void corruptPayloadIsRejected() throws Exception {
+        FailedSmsEntity.fromPayload("{\"sender\":", 0L);
+    }
+}
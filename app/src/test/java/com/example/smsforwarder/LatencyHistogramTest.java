@@ -0,0 +1,43 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(10, histogram.percentile(99));
+    }
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+
+        long p50 = histogram.percentile(50);
+        long p99 = histogram.percentile(99);
+        assertTrue("p50=" + p50, p50 >= 5_000 && p50 <= 5_000 * 1.125);
+        assertTrue("p99=" + p99, p99 >= 9_900 && p99 <= 10_000);
+        assertEquals(10_000, histogram.getMax());
+    }
+
+    @Test
+    public void bucketsCoverTheirOwnValues() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.upperBound(index));
+            assertTrue(index == 0 || value > LatencyHistogram.upperBound(index - 1));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import okio.Buffer;
+
+public class PayloadBatchBodyTest {
+    @Test
+    public void writesPayloadsVerbatimWithExactContentLength() throws Exception {
+        List<String> payloads = Arrays.asList("{\"content\":\"Số dư +1.000VND\"}", "{\"a\":1}");
+        PayloadBatchBody body = new PayloadBatchBody("tok\"en", payloads);
+
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+
+        assertEquals(body.contentLength(), sink.size());
+        String written = sink.readUtf8();
+        assertEquals("{\"token\":\"tok\\\"en\",\"data\":[" + payloads.get(0) + "," + payloads.get(1) + "]}", written);
+        JSONObject parsed = new JSONObject(written);
+        assertEquals("Số dư +1.000VND", parsed.getJSONArray("data").getJSONObject(0).getString("content"));
+    }
+
+    @Test
+    public void rejectsMalformedPayloads() {
+        assertTrue(PayloadBatchBody.isObject(" {\"a\":1} "));
+        assertFalse(PayloadBatchBody.isObject("[{\"a\":1}]"));
+        assertFalse(PayloadBatchBody.isObject(null));
+        assertFalse(PayloadBatchBody.isObject("{\"a\":}"));
+        assertFalse(PayloadBatchBody.isObject("{\"a\":1} {\"b\":2}"));
+        assertFalse(PayloadBatchBody.isObject("{\"a\":\"unterminated}"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class PrioritySenderTest {
+    private MockWebServer server;
+    private EndpointRouter router;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        Endpoint endpoint = new Endpoint("primary", server.url("/pay/sms3money").toString(), "token",
+                WireFormat.DEFAULT, false);
+        router = new EndpointRouter(Collections.singletonList(new ApiClient(new OkHttpClient(), endpoint)),
+                EndpointRouter.Mode.FAILOVER, false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        EndpointHealth.clearRegistry();
+    }
+
+    @Test
+    public void tokenBucketRefillsAtTheConfiguredRate() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        assertTrue(bucket.tryAcquire(5));
+        assertFalse(bucket.tryAcquire(1));
+        assertEquals(100, bucket.millisUntilAvailable(1));
+
+        now.addAndGet(100);
+        assertTrue(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void oversizedRequestWaitsForAFullBucketAndLeavesDebt() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        assertTrue(bucket.tryAcquire(20));
+        assertEquals(2_000, bucket.millisUntilAvailable(5));
+    }
+
+    @Test
+    public void liveBatchesAreNotHeldBackByAThrottledBacklog() throws Exception {
+        server.enqueue(new MockResponse().setBody("OK"));
+        server.enqueue(new MockResponse().setBody("OK"));
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1, 1, now::get);
+        bucket.tryAcquire(1);
+        PrioritySender sender = new PrioritySender(router, bucket);
+
+        CountDownLatch backlogDone = new CountDownLatch(1);
+        CountDownLatch liveDone = new CountDownLatch(1);
+        sender.sendPayloadsAsync(PrioritySender.Lane.BACKLOG, Collections.singletonList("{\"n\":0}"),
+                results -> backlogDone.countDown());
+        sender.sendPayloadsAsync(PrioritySender.Lane.LIVE, Collections.singletonList("{\"n\":1}"),
+                results -> liveDone.countDown());
+
+        assertTrue(liveDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, backlogDone.getCount());
+        assertEquals("{\"token\":\"token\",\"data\":[{\"n\":1}]}", server.takeRequest().getBody().readUtf8());
+
+        now.addAndGet(1_000);
+        assertTrue(backlogDone.await(5, TimeUnit.SECONDS));
+    }
+}
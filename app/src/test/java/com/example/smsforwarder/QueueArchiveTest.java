@@ -0,0 +1,78 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+public class QueueArchiveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendsAreReadableAsOneGzipStream() throws Exception {
+        File directory = folder.newFolder("archive");
+        QueueArchive archive = new QueueArchive(directory, 3);
+        long now = 1_700_000_000_000L;
+
+        archive.append(Arrays.asList(row(1, "first"), row(2, "second")), "expired", now);
+        archive.append(Collections.singletonList(row(3, "third")), "row_cap", now);
+
+        List<String> lines = readLines(archive.fileFor(now));
+        assertEquals(3, lines.size());
+        JSONObject last = new JSONObject(lines.get(2));
+        assertEquals(3, last.getLong("id"));
+        assertEquals("row_cap", last.getString("reason"));
+        assertEquals("third", new JSONObject(last.getString("payload")).getString("content"));
+    }
+
+    @Test
+    public void keepsOnlyTheNewestFiles() throws Exception {
+        File directory = folder.newFolder("archive");
+        QueueArchive archive = new QueueArchive(directory, 2);
+        long day = TimeUnit.DAYS.toMillis(1);
+        long start = 1_700_000_000_000L;
+
+        for (int index = 0; index < 3; index++) {
+            archive.append(Collections.singletonList(row(index, "body")), "expired", start + index * day);
+        }
+
+        assertFalse(archive.fileFor(start).exists());
+        assertTrue(archive.fileFor(start + day).exists());
+        assertTrue(archive.fileFor(start + 2 * day).exists());
+    }
+
+    private static FailedSmsEntity row(long id, String body) {
+        FailedSmsEntity entity = new FailedSmsEntity("m" + id, "VCB", body, "0900000000", "", -1, id, id, null);
+        entity.setId(id);
+        return entity;
+    }
+
+    private static List<String> readLines(File file) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
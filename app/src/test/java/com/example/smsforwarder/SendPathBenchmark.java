@@ -0,0 +1,85 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okio.Buffer;
+
+/**
+ * Cost of each step between an enriched SMS and the bytes on the wire. Run with
+ * {@code -Pbenchmark}; numbers are printed, not asserted, so compare them across commits.
+ */
+public class SendPathBenchmark {
+    private static final String BODY = "TK 0123456789 +1,500,000VND 12/05/24 10:15 SD 25,300,000VND ND CHUYEN TIEN";
+
+    private static ApiClient apiClient;
+    private static List<String> payloads;
+    private static List<FailedSmsEntity> rows;
+    private static EncryptionEngine engine;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        assumeTrue(Benchmarks.enabled());
+        apiClient = new ApiClient(new OkHttpClient(), "http://localhost/pay/sms3money");
+        payloads = new ArrayList<>();
+        rows = new ArrayList<>();
+        for (int index = 0; index < 100; index++) {
+            SmsModel sms = new SmsModel("Vietcombank", BODY + index, 1_700_000_000_000L + index, 1);
+            String payload = apiClient.buildBodyJson(sms, "0900000000", "8984000000000000000",
+                    TransactionParser.getDefault().parse(sms.getSender(), sms.getContent())).toString();
+            payloads.add(payload);
+            rows.addAll(FailedSmsEntity.fromPayload(payload, 1_700_000_000_000L));
+        }
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        engine = new EncryptionEngine(generator.generateKeyPair().getPublic());
+    }
+
+    @Test
+    public void buildBodyJson() throws Exception {
+        SmsModel sms = new SmsModel("Vietcombank", BODY, 1_700_000_000_000L, 1);
+        ParsedTransaction parsed = TransactionParser.getDefault().parse(sms.getSender(), BODY);
+        Benchmarks.measure("buildBodyJson", () -> apiClient.buildBodyJson(sms, "0900000000", "8984", parsed));
+    }
+
+    @Test
+    public void queuedRowToPayload() throws Exception {
+        FailedSmsEntity row = rows.get(0);
+        Benchmarks.measure("FailedSmsEntity.toPayload", row::toPayload);
+        Benchmarks.measure("FailedSmsEntity.fromPayload", () -> FailedSmsEntity.fromPayload(payloads.get(0), 0L));
+    }
+
+    @Test
+    public void batchSerialization() throws Exception {
+        Benchmarks.measure("PayloadBatchBody x100", () -> {
+            Buffer buffer = new Buffer();
+            new PayloadBatchBody(ApiClient.TOKEN, payloads).writeTo(buffer);
+            return buffer.size();
+        });
+        Benchmarks.measure("WireFormat.writeColumnar x100", () -> {
+            Buffer buffer = new Buffer();
+            WireFormat.writeColumnar(buffer, payloads);
+            return buffer.size();
+        });
+        Benchmarks.measure("WireFormat.gzip x100", () ->
+                WireFormat.gzip(new PayloadBatchBody(ApiClient.TOKEN, payloads)).contentLength());
+    }
+
+    @Test
+    public void encryption() throws Exception {
+        // RSA-OAEP with SHA-256 takes at most 190 bytes of plaintext per block.
+        String shortPayload = "{\"sender\":\"VCB\",\"content\":\"TK +1,000VND\"}";
+        Benchmarks.measure("EncryptionEngine.encrypt (RSA-OAEP)", () -> engine.encrypt(shortPayload));
+        Buffer batch = new Buffer();
+        PayloadBatchBody.writeArray(batch, payloads);
+        String data = batch.readUtf8();
+        Benchmarks.measure("EncryptionEngine.seal x100", () -> engine.seal(data));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Replays bursts of live messages through {@link BatchingSender}, {@link PrioritySender} and
+ * {@link EndpointRouter} against a {@link MockWebServer} that adds latency, random failures or an
+ * outage. Items that fail transiently are resubmitted once the router takes requests again, as
+ * the outbox would. Each scenario reports throughput and p50/p99 from submit to acknowledgement,
+ * and fails if any item is lost. Run with {@code -Pbenchmark}.
+ */
+public class SendPathLoadTest {
+    private static final long COMPLETION_TIMEOUT_SECONDS = 60;
+
+    /** What the server does to each request. */
+    private static final class Scenario extends Dispatcher {
+        final String name;
+        final long latencyMillis;
+        final double failureRate;
+        final long outageMillis;
+        final AtomicInteger requests = new AtomicInteger();
+        volatile long startedAt;
+
+        Scenario(String name, long latencyMillis, double failureRate, long outageMillis) {
+            this.name = name;
+            this.latencyMillis = latencyMillis;
+            this.failureRate = failureRate;
+            this.outageMillis = outageMillis;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            requests.incrementAndGet();
+            if (System.currentTimeMillis() - startedAt < outageMillis) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                return new MockResponse().setResponseCode(503);
+            }
+            return new MockResponse().setBody("OK").setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final ScheduledExecutorService resubmitter = Executors.newSingleThreadScheduledExecutor();
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(Benchmarks.enabled());
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        resubmitter.shutdownNow();
+        if (server != null) {
+            server.shutdown();
+        }
+        EndpointHealth.clearRegistry();
+    }
+
+    @Test
+    public void burst() throws Exception {
+        run(new Scenario("burst", 0, 0, 0), 2_000);
+    }
+
+    @Test
+    public void slowServer() throws Exception {
+        run(new Scenario("slow server (150 ms)", 150, 0, 0), 1_000);
+    }
+
+    @Test
+    public void flakyServer() throws Exception {
+        run(new Scenario("flaky server (10% 503)", 20, 0.10, 0), 1_000);
+    }
+
+    @Test
+    public void outage() throws Exception {
+        run(new Scenario("outage (3 s)", 20, 0, 3_000), 500);
+    }
+
+    private void run(Scenario scenario, int messages) throws Exception {
+        server.setDispatcher(scenario);
+        Endpoint endpoint = new Endpoint(scenario.name, server.url("/pay/sms3money").toString(), "token",
+                WireFormat.DEFAULT, false);
+        EndpointRouter router = new EndpointRouter(
+                Collections.singletonList(new ApiClient(new OkHttpClient(), endpoint)),
+                EndpointRouter.Mode.FAILOVER, false);
+        BatchingSender sender = new BatchingSender(
+                new PrioritySender(router, new TokenBucket(50, 100)), BatchingSender.Config.DEFAULT);
+        LatencyHistogram latency = new LatencyHistogram();
+        CountDownLatch done = new CountDownLatch(messages);
+
+        scenario.startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        for (int index = 0; index < messages; index++) {
+            String payload = "{\"message_id\":\"m" + index + "\",\"sender\":\"VCB\",\"content\":\"TK +1,000VND\"}";
+            submit(sender, router, payload, System.nanoTime(), latency, done);
+        }
+        boolean completed = done.await(COMPLETION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format(Locale.US,
+                "%-26s %5d msgs %6.2f s %8.1f msg/s  p50 %5d ms  p99 %5d ms  max %5d ms  %5d requests",
+                scenario.name, messages, seconds, messages / seconds,
+                latency.percentile(50), latency.percentile(99), latency.getMax(), scenario.requests.get()));
+        assertTrue("Timed out with " + done.getCount() + " messages unacknowledged", completed);
+        assertEquals(messages, latency.getCount());
+    }
+
+    private void submit(BatchingSender sender, EndpointRouter router, String payload, long submittedAt,
+                        LatencyHistogram latency, CountDownLatch done) {
+        sender.submit(payload, result -> {
+            if (result.status == DeliveryResult.Status.ACKED) {
+                latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedAt));
+                done.countDown();
+            } else {
+                long delay = Math.max(50L, router.millisUntilAvailable());
+                resubmitter.schedule(() -> submit(sender, router, payload, submittedAt, latency, done),
+                        delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class SmsDeduplicatorTest {
+    /** In-memory stand-in for the {@code sms_dedup} table. */
+    private static final class FakeDedupDao implements DedupDao {
+        final Map<String, Long> rows = new HashMap<>();
+
+        @Override
+        public long insert(DedupEntity entity) {
+            if (rows.containsKey(entity.getMessageId())) {
+                return -1L;
+            }
+            rows.put(entity.getMessageId(), entity.getSeenAt());
+            return rows.size();
+        }
+
+        @Override
+        public int countSince(String messageId, long since) {
+            Long seenAt = rows.get(messageId);
+            return seenAt != null && seenAt >= since ? 1 : 0;
+        }
+
+        @Override
+        public List<String> getIdsSince(long since) {
+            List<String> ids = new ArrayList<>();
+            for (Map.Entry<String, Long> row : rows.entrySet()) {
+                if (row.getValue() >= since) {
+                    ids.add(row.getKey());
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public int deleteOlderThan(long cutoff) {
+            int deleted = 0;
+            for (Iterator<Long> it = rows.values().iterator(); it.hasNext(); ) {
+                if (it.next() < cutoff) {
+                    it.remove();
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+    }
+
+    @Test
+    public void droppedMessageIsNotMarked() {
+        FakeDedupDao dao = new FakeDedupDao();
+        SmsDeduplicator deduplicator = new SmsDeduplicator(dao);
+
+        // Pre-checked, then dropped before the outbox commit (e.g. no receiver number).
+        assertFalse(deduplicator.isDuplicate("msg-1"));
+
+        assertFalse(deduplicator.isDuplicate("msg-1"));
+        assertTrue(dao.rows.isEmpty());
+    }
+
+    @Test
+    public void persistedMessageIsDuplicate() {
+        FakeDedupDao dao = new FakeDedupDao();
+        SmsDeduplicator deduplicator = new SmsDeduplicator(dao);
+
+        dao.insert(new DedupEntity("msg-1", System.currentTimeMillis()));
+        deduplicator.recordPersisted("msg-1");
+
+        assertTrue(deduplicator.isDuplicate("msg-1"));
+        assertFalse(deduplicator.isDuplicate("msg-2"));
+    }
+
+    @Test
+    public void bloomHitWithoutRowIsNotDuplicate() {
+        FakeDedupDao dao = new FakeDedupDao();
+        SmsDeduplicator deduplicator = new SmsDeduplicator(dao);
+
+        // The filter may say yes; the table has the final word.
+        deduplicator.recordPersisted("msg-1");
+
+        assertFalse(deduplicator.isDuplicate("msg-1"));
+    }
+
+    @Test
+    public void rowsFromEarlierProcessAreLoaded() {
+        FakeDedupDao dao = new FakeDedupDao();
+        dao.insert(new DedupEntity("msg-1", System.currentTimeMillis()));
+        SmsDeduplicator deduplicator = new SmsDeduplicator(dao);
+
+        assertTrue(deduplicator.isDuplicate("msg-1"));
+    }
+
+    @Test
+    public void expiredRowsAreForgotten() {
+        FakeDedupDao dao = new FakeDedupDao();
+        dao.insert(new DedupEntity("msg-1",
+                System.currentTimeMillis() - SmsDeduplicator.TTL_MILLIS - 1_000L));
+        SmsDeduplicator deduplicator = new SmsDeduplicator(dao);
+
+        assertFalse(deduplicator.isDuplicate("msg-1"));
+        assertTrue(dao.rows.isEmpty());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class SmsFilterTest {
+    @Test
+    public void matcherFindsKeywordsAnywhereIgnoringCase() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Arrays.asList("he", "she", "his", "hers", "Số dư"));
+
+        assertTrue(matcher.matchesAny("ushers"));
+        assertTrue(matcher.matchesAny("xxHISxx"));
+        assertTrue(matcher.matchesAny("TK 0123 SỐ DƯ 1.000.000"));
+        assertFalse(matcher.matchesAny("hxs"));
+        assertFalse(matcher.matchesAny(""));
+        assertFalse(KeywordMatcher.EMPTY.matchesAny("anything"));
+    }
+
+    @Test
+    public void failureLinksFindOverlappingKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Arrays.asList("abcd", "bce"));
+
+        assertTrue(matcher.matchesAny("xabce"));
+        assertFalse(matcher.matchesAny("abcabd"));
+    }
+
+    @Test
+    public void noRulesForwardsEverything() throws Exception {
+        SmsFilter.Rules rules = SmsFilter.Rules.parse("");
+
+        assertTrue(rules.accepts("VCB", "anything"));
+    }
+
+    @Test
+    public void denyWinsAndAllowListsRestrict() throws Exception {
+        SmsFilter.Rules rules = SmsFilter.Rules.parse("{"
+                + "\"allow_senders\":[\"Vietcombank\",\"TPBank\"],"
+                + "\"allow_keywords\":[\"so du\"],"
+                + "\"deny_keywords\":[\"OTP\",\"khuyen mai\"]}");
+
+        assertTrue(rules.accepts("VIETCOMBANK", "TK 0123 +500,000VND"));
+        assertTrue(rules.accepts("8899", "So du TK 0123 la 1,000,000VND"));
+        assertFalse(rules.accepts("TPBank", "Ma OTP cua ban la 123456"));
+        assertFalse(rules.accepts("Viettel", "Khuyen mai 50% data"));
+        assertFalse(rules.accepts("Viettel", "Goi cuoc cua ban da het han"));
+    }
+}
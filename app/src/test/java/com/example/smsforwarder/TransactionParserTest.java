@@ -0,0 +1,71 @@
+package com.example.smsforwarder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TransactionParserTest {
+    private final TransactionParser parser = TransactionParser.getDefault();
+
+    @Test
+    public void parsesVietcombankCredit() {
+        ParsedTransaction parsed = parser.parse("Vietcombank",
+                "SD TK 0011004123456 +2,000,000VND luc 18-10-2026 09:15:22. SD 12,345,678VND. "
+                        + "Ref MBVCB.3456789012.NGUYEN VAN A chuyen tien");
+
+        assertEquals("VCB", parsed.bank);
+        assertEquals(Long.valueOf(2_000_000L), parsed.amount);
+        assertEquals("0011004123456", parsed.account);
+        assertEquals("MBVCB.3456789012.NGUYEN", parsed.reference);
+        assertEquals(Long.valueOf(12_345_678L), parsed.balance);
+        assertEquals(ParsedTransaction.Confidence.HIGH, parsed.confidence);
+    }
+
+    @Test
+    public void parsesTechcombankDebit() {
+        ParsedTransaction parsed = parser.parse("Techcombank",
+                "TK 19031234567890 So tien GD:-1.500.000 So du:10.250.000 ND: FT26291ABCD12 thanh toan");
+
+        assertEquals("TCB", parsed.bank);
+        assertEquals(Long.valueOf(-1_500_000L), parsed.amount);
+        assertEquals("FT26291ABCD12", parsed.reference);
+        assertEquals(Long.valueOf(10_250_000L), parsed.balance);
+        assertEquals(ParsedTransaction.Confidence.HIGH, parsed.confidence);
+    }
+
+    @Test
+    public void unknownSendersUseTheGenericTemplateAtLowConfidence() {
+        ParsedTransaction parsed = parser.parse("8899", "TK 0123xxx456 +500,000VND. So du: 3,000,000");
+
+        assertNull(parsed.bank);
+        assertEquals(Long.valueOf(500_000L), parsed.amount);
+        assertEquals("0123xxx456", parsed.account);
+        assertEquals(Long.valueOf(3_000_000L), parsed.balance);
+        assertEquals(ParsedTransaction.Confidence.LOW, parsed.confidence);
+    }
+
+    @Test
+    public void nonTransactionMessagesAreNotParsed() {
+        assertNull(parser.parse("Viettel", "Chuc mung ban nhan duoc uu dai data"));
+    }
+
+    @Test
+    public void chatMessagesWithLabelLikeWordsAreNotParsed() {
+        assertNull(parser.parse("0912345678", "Can you send the fund and pay me 20 USD: 150000 tomorrow?"));
+    }
+
+    @Test
+    public void labelsWithoutAnAmountAreNotParsed() {
+        assertNull(parser.parse("8899", "TK 0123xxx456 So du: 3,000,000 ND: nhac no"));
+    }
+
+    @Test
+    public void genericLabelsOnlyMatchWholeWords() {
+        ParsedTransaction parsed = parser.parse("8899", "+500,000VND send and fund 20 USD 7000");
+
+        assertEquals(Long.valueOf(500_000L), parsed.amount);
+        assertNull(parsed.reference);
+        assertNull(parsed.balance);
+    }
+}